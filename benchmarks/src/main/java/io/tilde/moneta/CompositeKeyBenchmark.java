@@ -0,0 +1,87 @@
+package io.tilde.moneta;
+
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache hits for an entity with a composite key. Run with `-prof gc` to
+ * compare the bytes allocated per lookup for each way of building the key.
+ *
+ * Lives in io.tilde.moneta to fill the cache without a Cassandra session.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeKeyBenchmark {
+
+  @Table("plays")
+  @Cached
+  static class Play {
+
+    @PrimaryKey
+    UUID user;
+
+    @PrimaryKey
+    long playedAt;
+
+    @Column
+    String song;
+
+    Play(UUID user, long playedAt, String song) {
+      this.user = user;
+      this.playedAt = playedAt;
+      this.song = song;
+    }
+  }
+
+  MonetaMapper mapper;
+
+  UUID user;
+
+  long playedAt;
+
+  @Setup
+  public void setup() {
+    mapper = new MonetaMapper(null, "bench");
+    user = UUID.randomUUID();
+    playedAt = System.currentTimeMillis();
+
+    mapper.mappingFor(Play.class).getCache().put(
+      CompositeKey.of(user, playedAt),
+      new Play(user, playedAt, "Benchmarked"));
+  }
+
+  @Benchmark
+  public Play fixedArityKey() {
+    return mapper.get(Play.class, CompositeKey.of(user, playedAt));
+  }
+
+  @Benchmark
+  public Play varargsKey() {
+    return mapper.get(Play.class, user, playedAt);
+  }
+
+  @Benchmark
+  public Play listKey() {
+    return mapper.get(Play.class, Arrays.<Object>asList(user, playedAt));
+  }
+}
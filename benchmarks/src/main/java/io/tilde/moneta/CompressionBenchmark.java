@@ -0,0 +1,76 @@
+package io.tilde.moneta;
+
+import io.tilde.moneta.annotations.Compressed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of compressing and decompressing a @Compressed JSON column, per
+ * codec and document size. The bytes stored and the bytes sent in the
+ * INSERT, where blobs are hex literals, are printed once per trial.
+ *
+ * Lives in io.tilde.moneta to reach the package private codec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+  @Param({ "LZ4", "SNAPPY" })
+  Compressed.Codec codec;
+
+  @Param({ "1024", "16384", "131072" })
+  int size;
+
+  byte[] json;
+
+  ByteBuffer compressed;
+
+  @Setup
+  public void setup() {
+    StringBuilder doc = new StringBuilder("[");
+
+    for (int i = 0; doc.length() < size; ++i) {
+      doc.append(i == 0 ? "" : ",")
+        .append("{\"id\":").append(i)
+        .append(",\"name\":\"Song number ").append(i)
+        .append("\",\"plays\":").append(i * 7919 % 1000)
+        .append(",\"explicit\":").append(i % 3 == 0)
+        .append("}");
+    }
+
+    json = doc.append("]").toString().getBytes(Charset.forName("UTF-8"));
+    compressed = Compression.compress(json, codec, 0);
+
+    System.out.printf("%n%s %d bytes: stored %d -> %d bytes, on wire %d -> %d bytes%n",
+      codec, json.length,
+      json.length + 1, compressed.remaining(),
+      json.length + 2, 2 * compressed.remaining() + 2);
+  }
+
+  @Benchmark
+  public ByteBuffer compress() {
+    return Compression.compress(json, codec, 0);
+  }
+
+  @Benchmark
+  public byte[] decompress() {
+    return Compression.decompress(compressed);
+  }
+}
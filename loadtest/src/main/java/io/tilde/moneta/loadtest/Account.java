@@ -0,0 +1,43 @@
+package io.tilde.moneta.loadtest;
+
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+
+import java.util.UUID;
+
+/**
+ * The entity driven by the load test.
+ *
+ * @author Carl Lerche
+ */
+@Table("accounts")
+public class Account {
+
+  @PrimaryKey
+  UUID id;
+
+  @Column
+  String name;
+
+  @Column
+  String email;
+
+  @Column
+  long balance;
+
+  // Padding of configurable size, to vary the row size
+  @Column
+  String bio;
+
+  Account(UUID id, String name, String email, long balance, String bio) {
+    this.id = id;
+    this.name = name;
+    this.email = email;
+    this.balance = balance;
+    this.bio = bio;
+  }
+
+  public Account() {
+  }
+}
@@ -0,0 +1,113 @@
+package io.tilde.moneta.loadtest;
+
+/**
+ * Log-linear histogram of latencies in microseconds, laid out like
+ * HdrHistogram: values are bucketed by powers of two, each bucket split in
+ * 1024 linear sub-buckets, which keeps three significant digits at any
+ * magnitude in a fixed amount of memory.
+ *
+ * Not thread safe, every worker records into its own and they are merged
+ * at the end.
+ *
+ * @author Carl Lerche
+ */
+class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 11;
+
+  private static final int SUB_BUCKET_HALF_BITS = SUB_BUCKET_BITS - 1;
+
+  private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_HALF_BITS;
+
+  private static final long SUB_BUCKET_MASK = (1L << SUB_BUCKET_BITS) - 1;
+
+  // One hour, larger values are recorded as this
+  static final long MAX_VALUE = 3600L * 1000 * 1000;
+
+  private final long[] counts = new long[indexOf(MAX_VALUE) + 1];
+
+  private long total;
+
+  private long min = Long.MAX_VALUE;
+
+  private long max;
+
+  private double sum;
+
+  void record(long micros) {
+    long val = Math.max(0, Math.min(micros, MAX_VALUE));
+
+    counts[indexOf(val)]++;
+    total++;
+    sum += val;
+    min = Math.min(min, val);
+    max = Math.max(max, val);
+  }
+
+  void add(LatencyHistogram other) {
+    for (int i = 0; i < counts.length; ++i) {
+      counts[i] += other.counts[i];
+    }
+
+    total += other.total;
+    sum += other.sum;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  long getCount() {
+    return total;
+  }
+
+  long getMin() {
+    return total == 0 ? 0 : min;
+  }
+
+  long getMax() {
+    return max;
+  }
+
+  double getMean() {
+    return total == 0 ? 0 : sum / total;
+  }
+
+  /**
+   * The highest value that is equivalent to the value at the percentile,
+   * between 0 and 100.
+   */
+  long valueAtPercentile(double percentile) {
+    if (total == 0)
+      return 0;
+
+    long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+
+    for (int i = 0; i < counts.length; ++i) {
+      seen += counts[i];
+
+      if (seen >= target)
+        return Math.min(highestEquivalentValue(i), max);
+    }
+
+    return max;
+  }
+
+  static int indexOf(long value) {
+    int bucket = 64 - Long.numberOfLeadingZeros(value | SUB_BUCKET_MASK) - SUB_BUCKET_BITS;
+    int sub = (int) (value >>> bucket);
+
+    return ((bucket + 1) << SUB_BUCKET_HALF_BITS) + (sub - SUB_BUCKET_HALF_COUNT);
+  }
+
+  static long highestEquivalentValue(int index) {
+    int bucket = (index >> SUB_BUCKET_HALF_BITS) - 1;
+    long sub = (index & (SUB_BUCKET_HALF_COUNT - 1)) + SUB_BUCKET_HALF_COUNT;
+
+    if (bucket < 0) {
+      sub -= SUB_BUCKET_HALF_COUNT;
+      bucket = 0;
+    }
+
+    return ((sub + 1) << bucket) - 1;
+  }
+}
@@ -0,0 +1,197 @@
+package io.tilde.moneta.loadtest;
+
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.Session;
+import io.tilde.moneta.MonetaConfig;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.test.CassandraServer;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the end to end throughput and latency of the mapper against an
+ * embedded Cassandra server, driving a mix of get, persist and multiget
+ * operations from a number of threads.
+ *
+ * @author Carl Lerche
+ */
+public class LoadTest {
+
+  static final String KEYSPACE = "loadtest";
+
+  // Entities persisted at once while loading
+  static final int LOAD_BATCH = 1000;
+
+  public static void main(String[] args) throws Exception {
+    Options opts;
+
+    if (Arrays.asList(args).contains("-help")) {
+      System.out.print(Options.USAGE);
+      return;
+    }
+
+    try {
+      opts = Options.parse(args);
+    }
+    catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.print(Options.USAGE);
+      System.exit(2);
+      return;
+    }
+
+    Path tmpPath = Files.createTempDirectory("moneta-loadtest");
+    CassandraServer server = CassandraServer.newBuilder()
+      .withTmpPath(tmpPath)
+      .withClean()
+      .start();
+
+    Cluster cluster = Cluster.builder()
+      .addContactPoint("127.0.0.1")
+      .withPort(server.getNativePort())
+      .build();
+
+    try {
+      Session session = cluster.connect();
+
+      session.execute("CREATE KEYSPACE " + KEYSPACE + " WITH replication = " +
+        "{'class': 'SimpleStrategy', 'replication_factor': 1}");
+      session.execute(Schema.createTable(KEYSPACE, Account.class));
+      session.shutdown();
+
+      // The mapper builds its own cluster, with the connection settings
+      // being measured
+      MonetaConfig config = MonetaMapper.configure()
+        .withContactPoints("127.0.0.1")
+        .withPort(server.getNativePort())
+        .withKeyspace(KEYSPACE);
+
+      if (opts.profile != null) {
+        config.withProfile(opts.profile);
+      }
+
+      if (opts.compression != null) {
+        config.withProtocolCompression(opts.compression);
+      }
+
+      MonetaMapper mapper = config.connect();
+
+      Report report = run(mapper, opts);
+
+      System.err.println(report.toTable());
+
+      if (opts.output == null) {
+        System.out.print(report.toJson());
+      }
+      else {
+        write(Paths.get(opts.output), report.toJson());
+      }
+
+      mapper.close();
+      mapper.getSession().getCluster().shutdown();
+    }
+    finally {
+      cluster.shutdown();
+      server.stop();
+      CassandraServer.deleteRecursive(tmpPath.toFile());
+    }
+
+    // Cassandra leaves non daemon threads behind
+    System.exit(0);
+  }
+
+  static Report run(MonetaMapper mapper, Options opts) throws InterruptedException {
+    long startedAt = System.currentTimeMillis();
+    List<UUID> keys = load(mapper, opts);
+
+    List<Operation> mix = new ArrayList<>();
+
+    for (Map.Entry<String, Integer> entry : opts.mix.entrySet()) {
+      for (int i = 0; i < entry.getValue(); ++i) {
+        mix.add(Operation.valueOf(entry.getKey().toUpperCase()));
+      }
+    }
+
+    Operation[] ops = mix.toArray(new Operation[mix.size()]);
+    long start = System.nanoTime();
+    long spacing = opts.isClosedLoop() ? 0 : (long) (1e9 / opts.rate);
+
+    List<Worker> workers = new ArrayList<>();
+    List<Thread> threads = new ArrayList<>();
+
+    for (int i = 0; i < opts.threads; ++i) {
+      Worker worker = new Worker(mapper, keys, opts, ops, start, i * spacing, i);
+      Thread thread = new Thread(worker, "loadtest-" + i);
+
+      workers.add(worker);
+      threads.add(thread);
+      thread.start();
+    }
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Map<String, Worker.Stats> results = new LinkedHashMap<>();
+    Worker.Stats all = new Worker.Stats();
+
+    for (Operation op : Operation.values()) {
+      if (!opts.mix.containsKey(op.label())) {
+        continue;
+      }
+
+      Worker.Stats merged = new Worker.Stats();
+
+      for (Worker worker : workers) {
+        merged.add(worker.stats.get(op));
+      }
+
+      results.put(op.label(), merged);
+      all.add(merged);
+    }
+
+    results.put("all", all);
+
+    return new Report(opts, results, startedAt);
+  }
+
+  private static List<UUID> load(MonetaMapper mapper, Options opts) {
+    Random random = new Random(0);
+    List<UUID> keys = new ArrayList<>(opts.keys);
+    long start = System.nanoTime();
+
+    while (keys.size() < opts.keys) {
+      List<Account> batch = new ArrayList<>();
+
+      for (int i = 0; i < LOAD_BATCH && keys.size() < opts.keys; ++i) {
+        UUID id = UUID.randomUUID();
+
+        keys.add(id);
+        batch.add(Operation.account(id, opts, random));
+      }
+
+      mapper.persistAll(batch);
+    }
+
+    System.err.println(String.format("loaded %d entities in %d ms",
+      keys.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+
+    return keys;
+  }
+
+  private static void write(Path path, String contents) throws IOException {
+    Files.write(path, contents.getBytes(Charset.forName("UTF-8")));
+  }
+}
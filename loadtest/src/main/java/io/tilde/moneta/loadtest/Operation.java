@@ -0,0 +1,59 @@
+package io.tilde.moneta.loadtest;
+
+import com.google.common.base.Strings;
+import io.tilde.moneta.MonetaMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * The mapper calls the load test is made of. Keys are picked uniformly
+ * among the entities loaded before the run.
+ *
+ * @author Carl Lerche
+ */
+enum Operation {
+
+  GET {
+    void run(MonetaMapper mapper, List<UUID> keys, Options opts, Random random) {
+      mapper.get(Account.class, pick(keys, random));
+    }
+  },
+
+  PERSIST {
+    void run(MonetaMapper mapper, List<UUID> keys, Options opts, Random random) {
+      mapper.persist(account(pick(keys, random), opts, random));
+    }
+  },
+
+  MULTIGET {
+    void run(MonetaMapper mapper, List<UUID> keys, Options opts, Random random) {
+      List<UUID> batch = new ArrayList<>(opts.batch);
+
+      for (int i = 0; i < opts.batch; ++i) {
+        batch.add(pick(keys, random));
+      }
+
+      mapper.getAll(Account.class, batch);
+    }
+  };
+
+  abstract void run(MonetaMapper mapper, List<UUID> keys, Options opts, Random random);
+
+  String label() {
+    return name().toLowerCase();
+  }
+
+  static Account account(UUID id, Options opts, Random random) {
+    long n = random.nextInt(1000000);
+
+    return new Account(id, "Account " + n, "account" + n + "@example.com",
+      random.nextInt(100000), Strings.repeat("x", opts.size));
+  }
+
+  private static UUID pick(List<UUID> keys, Random random) {
+    return keys.get(random.nextInt(keys.size()));
+  }
+}
@@ -0,0 +1,144 @@
+package io.tilde.moneta.loadtest;
+
+import com.datastax.driver.core.ProtocolOptions;
+import io.tilde.moneta.ConnectionProfile;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line options of the load test, given as `-name value` pairs.
+ *
+ * @author Carl Lerche
+ */
+class Options {
+
+  static final String USAGE =
+    "usage: loadtest [options]\n" +
+    "  -threads N      worker threads (default 4)\n" +
+    "  -rate N         total operations per second, 0 for closed loop (default 0)\n" +
+    "  -duration S     measured seconds (default 30)\n" +
+    "  -warmup S       seconds run before measuring (default 10)\n" +
+    "  -mix SPEC       operation weights (default get=70,persist=20,multiget=10)\n" +
+    "  -keys N         entities loaded before the run (default 10000)\n" +
+    "  -batch N        keys per multiget (default 10)\n" +
+    "  -size N         characters of padding per entity (default 256)\n" +
+    "  -profile NAME   connection profile, throughput or latency (default none)\n" +
+    "  -compression C  frame compression, snappy or none, overrides the profile\n" +
+    "  -label TEXT     label stored in the report, e.g. a commit\n" +
+    "  -output FILE    writes the JSON report to the file instead of stdout\n";
+
+  int threads = 4;
+
+  double rate = 0;
+
+  int duration = 30;
+
+  int warmup = 10;
+
+  Map<String, Integer> mix = parseMix("get=70,persist=20,multiget=10");
+
+  int keys = 10000;
+
+  int batch = 10;
+
+  int size = 256;
+
+  // Null for the driver's defaults
+  ConnectionProfile profile;
+
+  ProtocolOptions.Compression compression;
+
+  String label = "";
+
+  String output;
+
+  static Options parse(String[] args) {
+    Options ret = new Options();
+
+    for (int i = 0; i < args.length; i += 2) {
+      if (i + 1 >= args.length)
+        throw new IllegalArgumentException("missing value; option=" + args[i]);
+
+      String val = args[i + 1];
+
+      switch (args[i]) {
+        case "-threads":
+          ret.threads = Integer.parseInt(val);
+          break;
+
+        case "-rate":
+          ret.rate = Double.parseDouble(val);
+          break;
+
+        case "-duration":
+          ret.duration = Integer.parseInt(val);
+          break;
+
+        case "-warmup":
+          ret.warmup = Integer.parseInt(val);
+          break;
+
+        case "-mix":
+          ret.mix = parseMix(val);
+          break;
+
+        case "-keys":
+          ret.keys = Integer.parseInt(val);
+          break;
+
+        case "-batch":
+          ret.batch = Integer.parseInt(val);
+          break;
+
+        case "-size":
+          ret.size = Integer.parseInt(val);
+          break;
+
+        case "-profile":
+          ret.profile = ConnectionProfile.valueOf(val.toUpperCase());
+          break;
+
+        case "-compression":
+          ret.compression = ProtocolOptions.Compression.valueOf(val.toUpperCase());
+          break;
+
+        case "-label":
+          ret.label = val;
+          break;
+
+        case "-output":
+          ret.output = val;
+          break;
+
+        default:
+          throw new IllegalArgumentException("unknown option; option=" + args[i]);
+      }
+    }
+
+    if (ret.threads < 1 || ret.keys < 1 || ret.batch < 1 || ret.duration < 1)
+      throw new IllegalArgumentException("threads, keys, batch and duration must be positive");
+
+    return ret;
+  }
+
+  boolean isClosedLoop() {
+    return rate <= 0;
+  }
+
+  private static Map<String, Integer> parseMix(String spec) {
+    Map<String, Integer> ret = new LinkedHashMap<>();
+
+    for (String part : spec.split(",")) {
+      String[] kv = part.split("=");
+
+      if (kv.length != 2)
+        throw new IllegalArgumentException("invalid mix; mix=" + spec);
+
+      Operation.valueOf(kv[0].trim().toUpperCase());
+      ret.put(kv[0].trim().toLowerCase(), Integer.parseInt(kv[1].trim()));
+    }
+
+    return ret;
+  }
+}
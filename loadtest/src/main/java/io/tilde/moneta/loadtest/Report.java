@@ -0,0 +1,121 @@
+package io.tilde.moneta.loadtest;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats the results of a run, as a table for people and as JSON for
+ * comparing runs across commits.
+ *
+ * @author Carl Lerche
+ */
+class Report {
+
+  static final double[] PERCENTILES = { 50, 90, 99, 99.9, 99.99 };
+
+  private final Options opts;
+
+  private final Map<String, Worker.Stats> results;
+
+  private final long startedAt;
+
+  Report(Options opts, Map<String, Worker.Stats> results, long startedAt) {
+    this.opts = opts;
+    this.results = results;
+    this.startedAt = startedAt;
+  }
+
+  String toTable() {
+    StringBuilder ret = new StringBuilder();
+
+    ret.append(String.format(Locale.ROOT, "%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+      "op", "count", "errors", "ops/s", "p50", "p90", "p99", "p99.9", "max"));
+
+    for (Map.Entry<String, Worker.Stats> entry : results.entrySet()) {
+      LatencyHistogram h = entry.getValue().response;
+
+      ret.append(String.format(Locale.ROOT, "%-10s %10d %8d %10.1f %9d %9d %9d %9d %9d%n",
+        entry.getKey(), h.getCount(), entry.getValue().errors, throughput(h),
+        h.valueAtPercentile(50), h.valueAtPercentile(90), h.valueAtPercentile(99),
+        h.valueAtPercentile(99.9), h.getMax()));
+    }
+
+    return ret.append("latencies in microseconds").append(opts.isClosedLoop() ?
+      ", closed loop" : ", from the intended start time").toString();
+  }
+
+  String toJson() {
+    StringBuilder ret = new StringBuilder("{\n");
+
+    ret.append("  \"label\": ").append(quote(opts.label)).append(",\n");
+    ret.append("  \"startedAt\": ").append(startedAt).append(",\n");
+    ret.append("  \"config\": {");
+    ret.append("\"mode\": ").append(quote(opts.isClosedLoop() ? "closed" : "fixed-rate"));
+    ret.append(", \"threads\": ").append(opts.threads);
+    ret.append(", \"rate\": ").append(opts.rate);
+    ret.append(", \"duration\": ").append(opts.duration);
+    ret.append(", \"warmup\": ").append(opts.warmup);
+    ret.append(", \"keys\": ").append(opts.keys);
+    ret.append(", \"batch\": ").append(opts.batch);
+    ret.append(", \"size\": ").append(opts.size);
+    ret.append(", \"profile\": ").append(
+      quote(opts.profile == null ? "default" : opts.profile.name().toLowerCase()));
+    ret.append(", \"compression\": ").append(
+      quote(opts.compression == null ? "default" : opts.compression.name().toLowerCase()));
+    ret.append(", \"mix\": {");
+
+    String sep = "";
+
+    for (Map.Entry<String, Integer> entry : opts.mix.entrySet()) {
+      ret.append(sep).append(quote(entry.getKey())).append(": ").append(entry.getValue());
+      sep = ", ";
+    }
+
+    ret.append("}},\n  \"operations\": {");
+    sep = "\n";
+
+    for (Map.Entry<String, Worker.Stats> entry : results.entrySet()) {
+      Worker.Stats stats = entry.getValue();
+
+      ret.append(sep).append("    ").append(quote(entry.getKey())).append(": {");
+      ret.append("\"count\": ").append(stats.response.getCount());
+      ret.append(", \"errors\": ").append(stats.errors);
+      ret.append(", \"throughput\": ").append(format(throughput(stats.response)));
+      ret.append(",\n      \"responseTimeMicros\": ").append(json(stats.response));
+      ret.append(",\n      \"serviceTimeMicros\": ").append(json(stats.service));
+      ret.append("}");
+      sep = ",\n";
+    }
+
+    return ret.append("\n  }\n}\n").toString();
+  }
+
+  private double throughput(LatencyHistogram h) {
+    return (double) h.getCount() / opts.duration;
+  }
+
+  private static String json(LatencyHistogram h) {
+    StringBuilder ret = new StringBuilder("{");
+
+    ret.append("\"min\": ").append(h.getMin());
+    ret.append(", \"mean\": ").append(format(h.getMean()));
+
+    for (double p : PERCENTILES) {
+      ret.append(", \"p").append(format(p)).append("\": ").append(h.valueAtPercentile(p));
+    }
+
+    return ret.append(", \"max\": ").append(h.getMax()).append("}").toString();
+  }
+
+  private static String format(double val) {
+    String ret = String.format(Locale.ROOT, "%.2f", val);
+
+    // 99.90 -> 99.9, 50.00 -> 50
+    ret = ret.replaceAll("0+$", "");
+    return ret.endsWith(".") ? ret.substring(0, ret.length() - 1) : ret;
+  }
+
+  private static String quote(String val) {
+    return "\"" + val.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+  }
+}
@@ -0,0 +1,102 @@
+package io.tilde.moneta.loadtest;
+
+import io.tilde.moneta.LazyColumn;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Compressed;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Builds the CREATE TABLE statement of an entity from its annotations. The
+ * first @PrimaryKey field is the partition key, the others are clustering
+ * columns.
+ *
+ * @author Carl Lerche
+ */
+class Schema {
+
+  static String createTable(String keyspace, Class<?> entity) {
+    Table table = entity.getAnnotation(Table.class);
+
+    if (table == null)
+      throw new IllegalArgumentException("not an entity; class=" + entity.getName());
+
+    List<String> columns = new ArrayList<>();
+    List<String> key = new ArrayList<>();
+
+    for (Field field : entity.getDeclaredFields()) {
+      PrimaryKey pk = field.getAnnotation(PrimaryKey.class);
+      Column col = field.getAnnotation(Column.class);
+
+      if (pk == null && col == null) {
+        continue;
+      }
+
+      String name = pk != null ? pk.value() : col.value();
+      name = name.equals("-") ? field.getName() : name;
+
+      columns.add(name + " " + typeOf(field));
+
+      if (pk != null) {
+        key.add(name);
+      }
+    }
+
+    if (key.isEmpty())
+      throw new IllegalArgumentException("no primary key; class=" + entity.getName());
+
+    StringBuilder ret = new StringBuilder("CREATE TABLE ")
+      .append(keyspace).append(".").append(table.value()).append(" (");
+
+    for (String column : columns) {
+      ret.append(column).append(", ");
+    }
+
+    ret.append("PRIMARY KEY (");
+
+    for (int i = 0; i < key.size(); ++i) {
+      ret.append(i == 0 ? "" : ", ").append(key.get(i));
+    }
+
+    return ret.append("))").toString();
+  }
+
+  private static String typeOf(Field field) {
+    if (field.getAnnotation(Compressed.class) != null)
+      return "blob";
+
+    Class<?> type = field.getType();
+
+    if (type == LazyColumn.class) {
+      type = (Class<?>) ((ParameterizedType) field.getGenericType())
+        .getActualTypeArguments()[0];
+    }
+
+    if (type == UUID.class)
+      return "uuid";
+
+    if (type == String.class)
+      return "text";
+
+    if (type == boolean.class)
+      return "boolean";
+
+    if (type == int.class)
+      return "int";
+
+    if (type == long.class)
+      return "bigint";
+
+    if (type == byte[].class || type == ByteBuffer.class)
+      return "blob";
+
+    throw new IllegalArgumentException("no column type for field; field=" + field.getName());
+  }
+}
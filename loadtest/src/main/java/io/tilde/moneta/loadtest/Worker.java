@@ -0,0 +1,135 @@
+package io.tilde.moneta.loadtest;
+
+import io.tilde.moneta.MonetaMapper;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs operations back to back (closed loop), or at a fixed rate.
+ *
+ * At a fixed rate, every operation has an intended start time on the
+ * worker's schedule. Its response time is measured from that time rather
+ * than from when it actually started, so that a stall which delays the
+ * following operations shows up in their latencies instead of being hidden
+ * (coordinated omission). The service time, from the actual start, is
+ * recorded as well.
+ *
+ * @author Carl Lerche
+ */
+class Worker implements Runnable {
+
+  static class Stats {
+
+    final LatencyHistogram response = new LatencyHistogram();
+
+    final LatencyHistogram service = new LatencyHistogram();
+
+    long errors;
+
+    void add(Stats other) {
+      response.add(other.response);
+      service.add(other.service);
+      errors += other.errors;
+    }
+  }
+
+  private final MonetaMapper mapper;
+
+  private final List<UUID> keys;
+
+  private final Options opts;
+
+  private final Operation[] mix;
+
+  private final long measureFrom;
+
+  private final long end;
+
+  private final long interval;
+
+  private final Random random;
+
+  // Intended start time of the next operation, at a fixed rate
+  private long next;
+
+  final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+  /**
+   * @param mix operations to pick from uniformly, repeated by weight
+   * @param start nanoTime at which the warmup starts
+   * @param offset nanos this worker's schedule is shifted by, so that the
+   *   workers of a fixed rate run do not all fire at once
+   */
+  Worker(MonetaMapper mapper, List<UUID> keys, Options opts, Operation[] mix,
+         long start, long offset, long seed) {
+    this.mapper = mapper;
+    this.keys = keys;
+    this.opts = opts;
+    this.mix = mix;
+    this.measureFrom = start + TimeUnit.SECONDS.toNanos(opts.warmup);
+    this.end = measureFrom + TimeUnit.SECONDS.toNanos(opts.duration);
+    this.interval = opts.isClosedLoop() ? 0 : (long) (1e9 * opts.threads / opts.rate);
+    this.random = new Random(seed);
+
+    for (Operation op : Operation.values()) {
+      stats.put(op, new Stats());
+    }
+
+    this.next = start + offset;
+  }
+
+  public void run() {
+    while (true) {
+      Operation op = mix[random.nextInt(mix.length)];
+      long intended = next;
+
+      if (interval > 0) {
+        next += interval;
+
+        // Behind schedule, run right away
+        while (intended < end && System.nanoTime() < intended) {
+          LockSupport.parkNanos(intended - System.nanoTime());
+        }
+      }
+
+      long started = System.nanoTime();
+
+      if (interval == 0) {
+        intended = started;
+      }
+
+      if (intended >= end)
+        return;
+
+      boolean failed = false;
+
+      try {
+        op.run(mapper, keys, opts, random);
+      }
+      catch (RuntimeException e) {
+        failed = true;
+      }
+
+      long done = System.nanoTime();
+
+      if (intended < measureFrom) {
+        continue;
+      }
+
+      Stats curr = stats.get(op);
+
+      if (failed) {
+        curr.errors++;
+      }
+
+      curr.response.record(TimeUnit.NANOSECONDS.toMicros(done - intended));
+      curr.service.record(TimeUnit.NANOSECONDS.toMicros(done - started));
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import org.apache.cassandra.config.Config;
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.CompositeType;
+import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.exceptions.SyntaxException;
+import org.apache.cassandra.io.sstable.SSTableSimpleUnsortedWriter;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+
+/**
+ * Writes entities straight to SSTables, laid out the way CQL3 stores the
+ * rows of the entity's table, so that they can be streamed into the
+ * cluster with sstableloader instead of being inserted one at a time.
+ *
+ * The table schema and the partitioner are read from the cluster once,
+ * the rows are then written without talking to it. Rows are buffered in
+ * memory and sorted by partition token before each SSTable is written.
+ *
+ * @author Carl Lerche
+ */
+class BulkImport<T> {
+  private static Logger LOG = LoggerFactory.getLogger(BulkImport.class);
+
+  // Size of the in memory buffer sorted into each SSTable
+  static final int BUFFER_SIZE_MB = 64;
+
+  private final Mapping<T> mapping;
+
+  private final TableMetadata table;
+
+  private final IPartitioner<?> partitioner;
+
+  private final CompositeType comparator;
+
+  private final AbstractType<?> keyValidator;
+
+  private final List<FieldMapping> partitionKey = new ArrayList<>();
+
+  private final List<FieldMapping> clusteringKey = new ArrayList<>();
+
+  private final List<FieldMapping> columns = new ArrayList<>();
+
+  BulkImport(Session session, Mapping<T> mapping) {
+    this.mapping = mapping;
+
+    KeyspaceMetadata ks = session.getCluster().getMetadata()
+      .getKeyspace(mapping.getKeyspace());
+
+    this.table = ks == null ? null : ks.getTable(mapping.getTable());
+
+    if (table == null)
+      throw new IllegalArgumentException("table does not exist; table=" +
+        mapping.getKeyspace() + "." + mapping.getTable());
+
+    Row schema = session.execute(
+      QueryBuilder.select("comparator", "key_validator")
+        .from("system", "schema_columnfamilies")
+        .where(eq("keyspace_name", mapping.getKeyspace()))
+        .and(eq("columnfamily_name", mapping.getTable()))).one();
+
+    Row local = session.execute(
+      QueryBuilder.select("partitioner").from("system", "local")).one();
+
+    try {
+      AbstractType<?> comparator = TypeParser.parse(schema.getString("comparator"));
+
+      if (!(comparator instanceof CompositeType))
+        throw new IllegalArgumentException(
+          "tables with COMPACT STORAGE are not supported; table=" +
+            mapping.getKeyspace() + "." + mapping.getTable());
+
+      this.comparator = (CompositeType) comparator;
+      this.keyValidator = TypeParser.parse(schema.getString("key_validator"));
+      this.partitioner = FBUtilities.newPartitioner(local.getString("partitioner"));
+    }
+    catch (ConfigurationException | SyntaxException e) {
+      throw new RuntimeException(e);
+    }
+
+    for (ColumnMetadata col : table.getPartitionKey()) {
+      partitionKey.add(fieldFor(col));
+    }
+
+    for (ColumnMetadata col : table.getClusteringKey()) {
+      clusteringKey.add(fieldFor(col));
+    }
+
+    for (FieldMapping field : mapping.getFields()) {
+      if (field.isMetadata()) {
+        continue;
+      }
+
+      if (!partitionKey.contains(field) && !clusteringKey.contains(field)) {
+        columnFor(field);
+        columns.add(field);
+      }
+    }
+  }
+
+  /**
+   * Writes the entities to SSTables in `directory/<keyspace>/<table>`, the
+   * layout expected by sstableloader, and returns that directory.
+   *
+   * Unless a cassandra.yaml can be found, this turns off the loading of
+   * Cassandra's configuration file for the whole JVM, see prepareConfig.
+   */
+  File write(Iterable<T> entities, File directory) throws IOException {
+    File dir = new File(new File(directory, mapping.getKeyspace()), mapping.getTable());
+
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("could not create directory; path=" + dir);
+
+    prepareConfig();
+
+    SSTableSimpleUnsortedWriter writer = new SSTableSimpleUnsortedWriter(
+      dir, partitioner, mapping.getKeyspace(), mapping.getTable(),
+      comparator, null, BUFFER_SIZE_MB);
+
+    long timestamp = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+    long count = 0;
+
+    try {
+      for (T entity : entities) {
+        write(writer, entity, timestamp);
+        ++count;
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    LOG.info("wrote sstables; table={}; entities={}; dir={}",
+      mapping.getTable(), count, dir);
+
+    return dir;
+  }
+
+  private void write(SSTableSimpleUnsortedWriter writer, T entity, long timestamp)
+    throws IOException {
+
+    writer.newRow(partitionKeyFor(entity));
+
+    CompositeType.Builder prefix = comparator.builder();
+
+    for (FieldMapping field : clusteringKey) {
+      prefix.add(serialize(field, entity));
+    }
+
+    // The row marker, which keeps the row alive when all columns are null
+    addColumn(writer,
+      prefix.copy().add(ByteBufferUtil.EMPTY_BYTE_BUFFER).build(),
+      ByteBufferUtil.EMPTY_BYTE_BUFFER,
+      timestamp);
+
+    for (FieldMapping field : columns) {
+      Object val = field.hasValue(entity) ? field.toColumn(entity) : null;
+
+      if (val == null)
+        continue;
+
+      addColumn(writer,
+        prefix.copy().add(UTF8Type.instance.decompose(field.getName())).build(),
+        serializeValue(field, val),
+        timestamp);
+    }
+  }
+
+  // Columns expire after the entity's default TTL, like they do when persisted
+  private void addColumn(SSTableSimpleUnsortedWriter writer, ByteBuffer name,
+                         ByteBuffer value, long timestamp) {
+    Integer ttl = mapping.getOptions().getTtl();
+
+    if (ttl == null || ttl == 0) {
+      writer.addColumn(name, value, timestamp);
+      return;
+    }
+
+    long expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttl);
+    writer.addExpiringColumn(name, value, timestamp, ttl, expiresAt);
+  }
+
+  private ByteBuffer partitionKeyFor(T entity) {
+    if (partitionKey.size() == 1)
+      return serialize(partitionKey.get(0), entity);
+
+    CompositeType.Builder key = ((CompositeType) keyValidator).builder();
+
+    for (FieldMapping field : partitionKey) {
+      key.add(serialize(field, entity));
+    }
+
+    return key.build();
+  }
+
+  private ByteBuffer serialize(FieldMapping field, T entity) {
+    Object val = field.toColumn(entity);
+
+    if (val == null)
+      throw new IllegalArgumentException("primary key is null; field=" + field.getName());
+
+    return serializeValue(field, val);
+  }
+
+  private ByteBuffer serializeValue(FieldMapping field, Object val) {
+    DataType type = columnFor(field).getType();
+
+    // Fields may be narrower than their column, see FieldMapping#cast
+    if (val instanceof Integer || val instanceof Long) {
+      switch (type.getName()) {
+        case VARINT:
+          val = BigInteger.valueOf(((Number) val).longValue());
+          break;
+
+        case BIGINT:
+          val = ((Number) val).longValue();
+          break;
+      }
+    }
+
+    return type.serialize(val);
+  }
+
+  private FieldMapping fieldFor(ColumnMetadata col) {
+    for (FieldMapping field : mapping.getFields()) {
+      if (field.getName().equals(col.getName()))
+        return field;
+    }
+
+    throw new IllegalArgumentException("primary key column is not mapped; column=" +
+      col.getName());
+  }
+
+  private ColumnMetadata columnFor(FieldMapping field) {
+    ColumnMetadata ret = table.getColumn(field.getName());
+
+    if (ret == null)
+      throw new IllegalArgumentException("column does not exist; column=" +
+        field.getName());
+
+    return ret;
+  }
+
+  /**
+   * Cassandra's configuration is loaded from cassandra.yaml, which exists
+   * in a server but usually not in a client. Fall back on the defaults.
+   *
+   * Config.setLoadYaml is a JVM wide switch. Applications that embed a
+   * Cassandra server should set cassandra.config before importing.
+   */
+  private static void prepareConfig() {
+    if (System.getProperty("cassandra.config") == null &&
+      BulkImport.class.getClassLoader().getResource("cassandra.yaml") == null) {
+      Config.setLoadYaml(false);
+    }
+  }
+}
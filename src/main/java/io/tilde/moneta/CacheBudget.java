@@ -0,0 +1,163 @@
+package io.tilde.moneta;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A memory budget, in estimated bytes, shared by all the entity caches of
+ * a mapper. Once the caches hold more than the budget, entries are evicted
+ * from the cache that exceeds its share the most. Shares are proportional
+ * to the caches' hit rates, so memory goes to the caches that use it.
+ *
+ * Entity sizes are estimated from the mapped fields when they are cached,
+ * using the actual length of strings and blobs.
+ *
+ * @author Carl Lerche
+ */
+class CacheBudget {
+  private static Logger LOG = LoggerFactory.getLogger(CacheBudget.class);
+
+  // Hit rate credited to every cache, so that new caches get some room
+  static final double MIN_HIT_RATE = 0.05;
+
+  // Key, cache node and entry objects of a cached entity
+  static final int ENTRY_OVERHEAD = 96;
+
+  private final long maxBytes;
+
+  private final AtomicLong used = new AtomicLong();
+
+  private final List<EntityCache<?>> caches = new CopyOnWriteArrayList<>();
+
+  CacheBudget(long maxBytes) {
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("cache budget must be positive");
+
+    this.maxBytes = maxBytes;
+  }
+
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  long getUsedBytes() {
+    return used.get();
+  }
+
+  void register(EntityCache<?> cache) {
+    caches.add(cache);
+  }
+
+  void unregister(EntityCache<?> cache) {
+    caches.remove(cache);
+  }
+
+  void added(long bytes) {
+    if (used.addAndGet(bytes) > maxBytes) {
+      evict();
+    }
+  }
+
+  void removed(long bytes) {
+    used.addAndGet(-bytes);
+  }
+
+  private synchronized void evict() {
+    while (used.get() > maxBytes) {
+      EntityCache<?> victim = victim();
+
+      if (victim == null || !victim.evictOne()) {
+        LOG.debug("nothing left to evict; used={}; max={}", used.get(), maxBytes);
+        return;
+      }
+    }
+  }
+
+  // The cache holding the most bytes beyond its share of the budget
+  private EntityCache<?> victim() {
+    double total = 0;
+
+    for (EntityCache<?> cache : caches) {
+      total += share(cache);
+    }
+
+    EntityCache<?> ret = null;
+    double worst = Double.NEGATIVE_INFINITY;
+
+    for (EntityCache<?> cache : caches) {
+      if (cache.getWeight() <= 0) {
+        continue;
+      }
+
+      double excess = cache.getWeight() - maxBytes * share(cache) / total;
+
+      if (excess > worst) {
+        worst = excess;
+        ret = cache;
+      }
+    }
+
+    return ret;
+  }
+
+  private static double share(EntityCache<?> cache) {
+    return Math.max(cache.hitRate(), MIN_HIT_RATE);
+  }
+
+  /**
+   * Estimated heap bytes held by the cache entry of the entity.
+   */
+  static int weigh(Object entity, List<FieldMapping> fields) {
+    long ret = ENTRY_OVERHEAD + 16;
+
+    for (FieldMapping field : fields) {
+      ret += sizeOf(field.getType(), field.get(entity));
+    }
+
+    return (int) Math.min(ret, Integer.MAX_VALUE);
+  }
+
+  private static long sizeOf(Class<?> type, Object val) {
+    if (type == long.class || type == double.class)
+      return 8;
+
+    if (type == boolean.class || type == byte.class)
+      return 1;
+
+    if (type.isPrimitive())
+      return 4;
+
+    // The reference, then the object it points to
+    long ret = 8;
+
+    if (val == null)
+      return ret;
+
+    if (val instanceof String)
+      return ret + 40 + 2L * ((String) val).length();
+
+    if (val instanceof byte[])
+      return ret + 16 + ((byte[]) val).length;
+
+    // Views of a driver response report the capacity of the whole
+    // response, which is what they keep alive
+    if (val instanceof ByteBuffer)
+      return ret + 64 + ((ByteBuffer) val).capacity();
+
+    if (val instanceof UUID)
+      return ret + 32;
+
+    if (val instanceof LazyColumn) {
+      Object value = ((LazyColumn<?>) val).peek();
+      return ret + 24 + (value == null ? 0 : sizeOf(value.getClass(), value));
+    }
+
+    return ret + 32;
+  }
+}
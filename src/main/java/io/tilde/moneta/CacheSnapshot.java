@@ -0,0 +1,373 @@
+package io.tilde.moneta;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Saves the keys of the hottest entries of every @Cached mapping to a local
+ * file and warms the caches back up from it after a restart.
+ *
+ * Only keys and load times are written. Entities are rebuilt from rows by
+ * their loaders, so restoring a snapshot re-fetches the keys from Cassandra.
+ *
+ * @author Carl Lerche
+ */
+class CacheSnapshot {
+  private static Logger LOG = LoggerFactory.getLogger(CacheSnapshot.class);
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final int MAGIC = 0x4d4e5441; // MNTA
+
+  private static final int VERSION = 1;
+
+  // Max number of gets in flight while restoring
+  private static final int RESTORE_CONCURRENCY = 64;
+
+  private static final byte NULL = 0;
+  private static final byte UUID_KEY = 1;
+  private static final byte STRING_KEY = 2;
+  private static final byte LONG_KEY = 3;
+  private static final byte INT_KEY = 4;
+  private static final byte BOOLEAN_KEY = 5;
+  private static final byte COMPOSITE_KEY = 6;
+
+  private final Path path;
+
+  private final int size;
+
+  private final long maxAge;
+
+  // Classes whose unsupported key types were already warned about
+  private final Set<String> skipped = new HashSet<>();
+
+  CacheSnapshot(Path path, int size, long maxAge) {
+    this.path = path;
+    this.size = size;
+    this.maxAge = maxAge;
+  }
+
+  /**
+   * Writes the hottest keys of the given mappings through a memory-mapped
+   * buffer. The file is written next to the target and then moved over it,
+   * so a crash never leaves a truncated snapshot behind.
+   *
+   * Keys of types the format does not support are left out, the other
+   * classes are still saved.
+   */
+  synchronized void save(Collection<? extends Mapping<?>> mappings) throws IOException {
+    Map<String, List<EntityCache.Snapshot>> sections = new LinkedHashMap<>();
+
+    for (Mapping<?> mapping : mappings) {
+      if (mapping.getCache() == null)
+        continue;
+
+      String name = mapping.getTarget().getName();
+      List<EntityCache.Snapshot> entries = new ArrayList<>();
+
+      for (EntityCache.Snapshot entry : mapping.getCache().hottest(size)) {
+        if (isSupported(entry.key)) {
+          entries.add(entry);
+        }
+        else if (skipped.add(name)) {
+          LOG.warn("cannot snapshot keys of the class, skipping them; class={}; type={}",
+            name, entry.key.getClass().getName());
+        }
+      }
+
+      sections.put(name, entries);
+    }
+
+    long len = 12;
+
+    for (Map.Entry<String, List<EntityCache.Snapshot>> section : sections.entrySet()) {
+      len += 2 + section.getKey().getBytes(UTF8).length + 4;
+
+      for (EntityCache.Snapshot entry : section.getValue()) {
+        len += 8 + sizeOf(entry.key);
+      }
+    }
+
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+    try (FileChannel channel = FileChannel.open(tmp,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE)) {
+
+      MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, len);
+
+      buf.putInt(MAGIC);
+      buf.putInt(VERSION);
+      buf.putInt(sections.size());
+
+      for (Map.Entry<String, List<EntityCache.Snapshot>> section : sections.entrySet()) {
+        byte[] name = section.getKey().getBytes(UTF8);
+        buf.putShort((short) name.length);
+        buf.put(name);
+        buf.putInt(section.getValue().size());
+
+        for (EntityCache.Snapshot entry : section.getValue()) {
+          buf.putLong(entry.loadedAt);
+          writeKey(buf, entry.key);
+        }
+      }
+
+      buf.force();
+    }
+
+    Files.move(tmp, path,
+      StandardCopyOption.REPLACE_EXISTING,
+      StandardCopyOption.ATOMIC_MOVE);
+
+    LOG.debug("saved cache snapshot; path={}; bytes={}", path, len);
+  }
+
+  /**
+   * Reads the snapshot and re-fetches every key that is younger than the
+   * configured max age, filling the caches of the corresponding mappings.
+   */
+  void restore(MonetaMapper mapper) throws IOException {
+    if (!Files.exists(path)) {
+      LOG.debug("no cache snapshot; path={}", path);
+      return;
+    }
+
+    Map<String, List<EntityCache.Snapshot>> sections = read();
+    long oldest = System.currentTimeMillis() - maxAge;
+    final Semaphore inFlight = new Semaphore(RESTORE_CONCURRENCY);
+    int restored = 0;
+
+    for (Map.Entry<String, List<EntityCache.Snapshot>> section : sections.entrySet()) {
+      Mapping<?> mapping;
+
+      try {
+        mapping = mapper.mappingFor(Class.forName(section.getKey()));
+      }
+      catch (ClassNotFoundException e) {
+        LOG.warn("skipping snapshot of unknown class; class={}", section.getKey());
+        continue;
+      }
+
+      // The class may not be cached anymore
+      if (mapping == null || mapping.getCache() == null)
+        continue;
+
+      for (EntityCache.Snapshot entry : section.getValue()) {
+        if (entry.loadedAt < oldest)
+          continue;
+
+        try {
+          inFlight.acquire();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+
+        mapping.get(mapper.getSession(), entry.key).addListener(new Runnable() {
+          public void run() {
+            inFlight.release();
+          }
+        }, MoreExecutors.sameThreadExecutor());
+
+        ++restored;
+      }
+    }
+
+    // Wait for the tail of the restore
+    inFlight.acquireUninterruptibly(RESTORE_CONCURRENCY);
+
+    LOG.info("restored cache snapshot; path={}; keys={}", path, restored);
+  }
+
+  Map<String, List<EntityCache.Snapshot>> read() throws IOException {
+    Map<String, List<EntityCache.Snapshot>> ret = new LinkedHashMap<>();
+
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+        LOG.warn("ignoring cache snapshot with unknown format; path={}", path);
+        return ret;
+      }
+
+      int sections = buf.getInt();
+
+      for (int i = 0; i < sections; ++i) {
+        byte[] name = new byte[buf.getShort()];
+        buf.get(name);
+
+        int count = buf.getInt();
+        List<EntityCache.Snapshot> entries = new ArrayList<>(count);
+
+        for (int j = 0; j < count; ++j) {
+          long loadedAt = buf.getLong();
+          entries.add(new EntityCache.Snapshot(readKey(buf), loadedAt, 0));
+        }
+
+        ret.put(new String(name, UTF8), entries);
+      }
+    }
+
+    return ret;
+  }
+
+  private static boolean isSupported(Object key) {
+    if (key instanceof CompositeKey) {
+      CompositeKey composite = (CompositeKey) key;
+
+      for (int i = 0; i < composite.size(); ++i) {
+        if (!isSupported(composite.get(i)))
+          return false;
+      }
+
+      return true;
+    }
+
+    return key == null ||
+      key instanceof UUID ||
+      key instanceof String ||
+      key instanceof Long ||
+      key instanceof Integer ||
+      key instanceof Boolean;
+  }
+
+  private static int sizeOf(Object key) {
+    if (key == null) {
+      return 1;
+    }
+    else if (key instanceof UUID) {
+      return 1 + 16;
+    }
+    else if (key instanceof String) {
+      return 1 + 4 + ((String) key).getBytes(UTF8).length;
+    }
+    else if (key instanceof Long) {
+      return 1 + 8;
+    }
+    else if (key instanceof Integer) {
+      return 1 + 4;
+    }
+    else if (key instanceof Boolean) {
+      return 1 + 1;
+    }
+    else if (key instanceof CompositeKey) {
+      CompositeKey composite = (CompositeKey) key;
+      int ret = 1 + 4;
+
+      for (int i = 0; i < composite.size(); ++i) {
+        ret += sizeOf(composite.get(i));
+      }
+
+      return ret;
+    }
+    else {
+      throw new IllegalArgumentException(
+        "cannot snapshot keys of type `" + key.getClass() + "`");
+    }
+  }
+
+  private static void writeKey(ByteBuffer buf, Object key) {
+    if (key == null) {
+      buf.put(NULL);
+    }
+    else if (key instanceof UUID) {
+      UUID uuid = (UUID) key;
+      buf.put(UUID_KEY);
+      buf.putLong(uuid.getMostSignificantBits());
+      buf.putLong(uuid.getLeastSignificantBits());
+    }
+    else if (key instanceof String) {
+      byte[] bytes = ((String) key).getBytes(UTF8);
+      buf.put(STRING_KEY);
+      buf.putInt(bytes.length);
+      buf.put(bytes);
+    }
+    else if (key instanceof Long) {
+      buf.put(LONG_KEY);
+      buf.putLong((Long) key);
+    }
+    else if (key instanceof Integer) {
+      buf.put(INT_KEY);
+      buf.putInt((Integer) key);
+    }
+    else if (key instanceof Boolean) {
+      buf.put(BOOLEAN_KEY);
+      buf.put((byte) ((Boolean) key ? 1 : 0));
+    }
+    else if (key instanceof CompositeKey) {
+      CompositeKey composite = (CompositeKey) key;
+      buf.put(COMPOSITE_KEY);
+      buf.putInt(composite.size());
+
+      for (int i = 0; i < composite.size(); ++i) {
+        writeKey(buf, composite.get(i));
+      }
+    }
+    else {
+      throw new IllegalArgumentException(
+        "cannot snapshot keys of type `" + key.getClass() + "`");
+    }
+  }
+
+  private static Object readKey(ByteBuffer buf) {
+    byte tag = buf.get();
+
+    switch (tag) {
+      case NULL:
+        return null;
+
+      case UUID_KEY:
+        return new UUID(buf.getLong(), buf.getLong());
+
+      case STRING_KEY:
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+
+      case LONG_KEY:
+        return buf.getLong();
+
+      case INT_KEY:
+        return buf.getInt();
+
+      case BOOLEAN_KEY:
+        return buf.get() != 0;
+
+      case COMPOSITE_KEY:
+        int size = buf.getInt();
+        List<Object> components = new ArrayList<>(size);
+
+        for (int i = 0; i < size; ++i) {
+          components.add(readKey(buf));
+        }
+
+        return CompositeKey.of(components);
+
+      default:
+        throw new IllegalStateException("unknown key tag " + tag);
+    }
+  }
+}
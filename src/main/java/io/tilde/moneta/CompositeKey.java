@@ -1,28 +1,101 @@
 package io.tilde.moneta;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
+ * The key of an entity with more than one primary key column.
+ *
+ * Keys of up to four components are stored in fixed-arity fields, so
+ * building a key for a cache lookup costs a single small object. Keys are
+ * equal when their components are equal, regardless of how they were
+ * built. Components are kept as passed, they must have the types of the
+ * fields of the key: 5 and 5L are different components.
+ *
  * @author Carl Lerche
  */
 public class CompositeKey {
 
-  final List<? extends Object> components;
+  public static CompositeKey of(Object a, Object b) {
+    return new Key2(a, b);
+  }
+
+  public static CompositeKey of(Object a, Object b, Object c) {
+    return new Key3(a, b, c);
+  }
+
+  public static CompositeKey of(Object a, Object b, Object c, Object d) {
+    return new Key4(a, b, c, d);
+  }
+
+  public static CompositeKey of(List<? extends Object> components) {
+    switch (components.size()) {
+      case 2:
+        return new Key2(components.get(0), components.get(1));
+
+      case 3:
+        return new Key3(components.get(0), components.get(1), components.get(2));
+
+      case 4:
+        return new Key4(components.get(0), components.get(1),
+          components.get(2), components.get(3));
+
+      default:
+        return new ListKey(new ArrayList<>(components));
+    }
+  }
+
+  static CompositeKey of(Object first, Object[] rest) {
+    switch (rest.length) {
+      case 1:
+        return new Key2(first, rest[0]);
+
+      case 2:
+        return new Key3(first, rest[0], rest[1]);
+
+      case 3:
+        return new Key4(first, rest[0], rest[1], rest[2]);
+
+      default:
+        List<Object> components = new ArrayList<>(rest.length + 1);
+        components.add(first);
+        components.addAll(Arrays.asList(rest));
+        return new ListKey(components);
+    }
+  }
 
   final int hashCode;
 
+  // The key built by the public constructor, null for the key shapes
+  private final CompositeKey delegate;
+
+  /**
+   * @deprecated use {@link #of(List)}, which does not need the extra object
+   */
+  @Deprecated
   public CompositeKey(List<? extends Object> components) {
-    this.components = Collections.unmodifiableList(components);
-    this.hashCode = components.hashCode();
+    this(of(components));
+  }
+
+  private CompositeKey(CompositeKey delegate) {
+    this.hashCode = delegate.hashCode;
+    this.delegate = delegate;
+  }
+
+  CompositeKey(int hashCode) {
+    this.hashCode = hashCode;
+    this.delegate = null;
   }
 
   public Object get(int idx) {
-    return components.get(idx);
+    return delegate.get(idx);
   }
 
   public int size() {
-    return components.size();
+    return delegate.size();
   }
 
   public int hashCode() {
@@ -30,10 +103,177 @@ public class CompositeKey {
   }
 
   public boolean equals(Object o) {
-    if (o instanceof CompositeKey) {
-      return components.equals(((CompositeKey) o).components);
+    if (o == this)
+      return true;
+
+    if (!(o instanceof CompositeKey))
+      return false;
+
+    CompositeKey other = (CompositeKey) o;
+
+    if (hashCode != other.hashCode || size() != other.size())
+      return false;
+
+    for (int i = 0; i < size(); ++i) {
+      if (!Objects.equals(get(i), other.get(i)))
+        return false;
+    }
+
+    return true;
+  }
+
+  public String toString() {
+    StringBuilder ret = new StringBuilder("CompositeKey[");
+
+    for (int i = 0; i < size(); ++i) {
+      if (i > 0)
+        ret.append(", ");
+
+      ret.append(get(i));
+    }
+
+    return ret.append(']').toString();
+  }
+
+  // Same as List#hashCode, so that all key shapes hash alike
+  private static int hash(int h, Object o) {
+    return 31 * h + (o == null ? 0 : o.hashCode());
+  }
+
+  static final class Key2 extends CompositeKey {
+
+    final Object a;
+
+    final Object b;
+
+    Key2(Object a, Object b) {
+      super(hash(hash(1, a), b));
+      this.a = a;
+      this.b = b;
+    }
+
+    public Object get(int idx) {
+      switch (idx) {
+        case 0: return a;
+        case 1: return b;
+        default: throw new IndexOutOfBoundsException("index: " + idx);
+      }
     }
 
-    return false;
+    public int size() {
+      return 2;
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof Key2) {
+        Key2 other = (Key2) o;
+        return Objects.equals(a, other.a) && Objects.equals(b, other.b);
+      }
+
+      return super.equals(o);
+    }
+  }
+
+  static final class Key3 extends CompositeKey {
+
+    final Object a;
+
+    final Object b;
+
+    final Object c;
+
+    Key3(Object a, Object b, Object c) {
+      super(hash(hash(hash(1, a), b), c));
+      this.a = a;
+      this.b = b;
+      this.c = c;
+    }
+
+    public Object get(int idx) {
+      switch (idx) {
+        case 0: return a;
+        case 1: return b;
+        case 2: return c;
+        default: throw new IndexOutOfBoundsException("index: " + idx);
+      }
+    }
+
+    public int size() {
+      return 3;
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof Key3) {
+        Key3 other = (Key3) o;
+        return Objects.equals(a, other.a) &&
+          Objects.equals(b, other.b) &&
+          Objects.equals(c, other.c);
+      }
+
+      return super.equals(o);
+    }
+  }
+
+  static final class Key4 extends CompositeKey {
+
+    final Object a;
+
+    final Object b;
+
+    final Object c;
+
+    final Object d;
+
+    Key4(Object a, Object b, Object c, Object d) {
+      super(hash(hash(hash(hash(1, a), b), c), d));
+      this.a = a;
+      this.b = b;
+      this.c = c;
+      this.d = d;
+    }
+
+    public Object get(int idx) {
+      switch (idx) {
+        case 0: return a;
+        case 1: return b;
+        case 2: return c;
+        case 3: return d;
+        default: throw new IndexOutOfBoundsException("index: " + idx);
+      }
+    }
+
+    public int size() {
+      return 4;
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof Key4) {
+        Key4 other = (Key4) o;
+        return Objects.equals(a, other.a) &&
+          Objects.equals(b, other.b) &&
+          Objects.equals(c, other.c) &&
+          Objects.equals(d, other.d);
+      }
+
+      return super.equals(o);
+    }
+  }
+
+  static final class ListKey extends CompositeKey {
+
+    final List<Object> components;
+
+    ListKey(List<Object> components) {
+      super(components.hashCode());
+      this.components = Collections.unmodifiableList(components);
+    }
+
+    public Object get(int idx) {
+      return components.get(idx);
+    }
+
+    public int size() {
+      return components.size();
+    }
   }
 }
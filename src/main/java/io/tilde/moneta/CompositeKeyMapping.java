@@ -1,5 +1,6 @@
 package io.tilde.moneta;
 
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.querybuilder.Clause;
 
 import java.util.ArrayList;
@@ -42,4 +43,28 @@ public class CompositeKeyMapping extends KeyMapping {
     return ret;
   }
 
+  public List<FieldMapping> getFields() {
+    return primaryFields;
+  }
+
+  public Object keyOf(Object entity) {
+    List<Object> ret = new ArrayList<>(primaryFields.size());
+
+    for (FieldMapping field : primaryFields) {
+      ret.add(field.get(entity));
+    }
+
+    return CompositeKey.of(ret);
+  }
+
+  public Object keyOf(Row row) {
+    List<Object> ret = new ArrayList<>(primaryFields.size());
+
+    for (FieldMapping field : primaryFields) {
+      ret.add(field.cast(row));
+    }
+
+    return CompositeKey.of(ret);
+  }
+
 }
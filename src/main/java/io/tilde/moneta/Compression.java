@@ -0,0 +1,103 @@
+package io.tilde.moneta;
+
+import io.tilde.moneta.annotations.Compressed;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Decompressor;
+import net.jpountz.lz4.LZ4Factory;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes the values of @Compressed columns. The first byte tells how the
+ * rest was encoded, so the codec and threshold of a field can be changed
+ * without rewriting the values already stored.
+ *
+ * @author Carl Lerche
+ */
+class Compression {
+
+  static final byte NONE = 0;
+
+  static final byte LZ4 = 1;
+
+  static final byte SNAPPY = 2;
+
+  private static final LZ4Compressor lz4 = LZ4Factory.fastestInstance().fastCompressor();
+
+  private static final LZ4Decompressor unlz4 = LZ4Factory.fastestInstance().decompressor();
+
+  static ByteBuffer compress(byte[] data, Compressed.Codec codec, int threshold) {
+    if (data.length >= threshold) {
+      ByteBuffer ret = codec == Compressed.Codec.LZ4 ? lz4(data) : snappy(data);
+
+      // Incompressible data is stored as is
+      if (ret.remaining() < data.length + 1)
+        return ret;
+    }
+
+    ByteBuffer ret = ByteBuffer.allocate(data.length + 1);
+    ret.put(NONE).put(data).flip();
+    return ret;
+  }
+
+  static byte[] decompress(ByteBuffer buf) {
+    ByteBuffer in = buf.duplicate();
+
+    if (!in.hasRemaining())
+      throw new IllegalArgumentException("compressed value has no header");
+
+    byte codec = in.get();
+
+    switch (codec) {
+      case NONE:
+        return remaining(in);
+
+      case LZ4:
+        byte[] ret = new byte[in.getInt()];
+        byte[] src = remaining(in);
+        unlz4.decompress(src, 0, ret, 0, ret.length);
+        return ret;
+
+      case SNAPPY:
+        try {
+          return Snappy.uncompress(remaining(in));
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+
+      default:
+        throw new IllegalArgumentException("unknown compression; codec=" + codec);
+    }
+  }
+
+  private static ByteBuffer lz4(byte[] data) {
+    byte[] out = new byte[5 + lz4.maxCompressedLength(data.length)];
+    int len = lz4.compress(data, 0, data.length, out, 5);
+
+    ByteBuffer ret = ByteBuffer.wrap(out, 0, 5 + len);
+    ret.put(LZ4).putInt(data.length);
+    ret.position(0);
+    return ret;
+  }
+
+  private static ByteBuffer snappy(byte[] data) {
+    try {
+      byte[] compressed = Snappy.compress(data);
+      ByteBuffer ret = ByteBuffer.allocate(compressed.length + 1);
+      ret.put(SNAPPY).put(compressed).flip();
+      return ret;
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static byte[] remaining(ByteBuffer buf) {
+    byte[] ret = new byte[buf.remaining()];
+    buf.get(ret);
+    return ret;
+  }
+}
@@ -0,0 +1,51 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.ProtocolOptions;
+
+/**
+ * Presets of the connection settings of the cluster a MonetaConfig builds.
+ * Settings given to the config explicitly take precedence over the
+ * profile's.
+ *
+ * @author Carl Lerche
+ */
+public enum ConnectionProfile {
+
+  /**
+   * Snappy compressed frames, and few connections that take many requests
+   * each before more are opened. Suits bulk loads and large rows, where
+   * the network is the bottleneck.
+   */
+  THROUGHPUT(ProtocolOptions.Compression.SNAPPY, 2, 8, 25, 128, false),
+
+  /**
+   * Uncompressed frames, and more connections opened up front that take
+   * fewer requests each, so requests do not queue behind each other, and
+   * Nagle's algorithm is disabled.
+   */
+  LATENCY(ProtocolOptions.Compression.NONE, 4, 8, 8, 32, true);
+
+  final ProtocolOptions.Compression compression;
+
+  final int coreConnections;
+
+  final int maxConnections;
+
+  final int minRequests;
+
+  final int maxRequests;
+
+  final boolean tcpNoDelay;
+
+  ConnectionProfile(ProtocolOptions.Compression compression,
+                    int coreConnections, int maxConnections,
+                    int minRequests, int maxRequests,
+                    boolean tcpNoDelay) {
+    this.compression = compression;
+    this.coreConnections = coreConnections;
+    this.maxConnections = maxConnections;
+    this.minRequests = minRequests;
+    this.maxRequests = maxRequests;
+    this.tcpNoDelay = tcpNoDelay;
+  }
+}
@@ -0,0 +1,416 @@
+package io.tilde.moneta;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import io.tilde.moneta.annotations.Cached;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the loaded entities of a @Cached class. Every entry remembers when
+ * it was loaded so that hot keys can be reloaded in the background before
+ * they go stale.
+ *
+ * When the mapper has a cache budget, the cache is bounded by the budget
+ * rather than by its maximum size, and tracks the estimated bytes of its
+ * entries. Otherwise the maximum size can be changed at runtime, see
+ * {@link #resize(long)}.
+ *
+ * @author Carl Lerche
+ */
+class EntityCache<T> {
+
+  static class Entry<T> {
+
+    final T value;
+
+    final long loadedAt;
+
+    // Estimated bytes, zero without a budget
+    final int weight;
+
+    // Approximate read count, used to rank entries for snapshots
+    volatile int hits;
+
+    volatile long lastRead;
+
+    Entry(T value, long loadedAt, int weight) {
+      this.value = value;
+      this.loadedAt = loadedAt;
+      this.weight = weight;
+      this.lastRead = loadedAt;
+    }
+  }
+
+  static class Snapshot {
+
+    final Object key;
+
+    // Wall clock time in millis at which the entity was loaded
+    final long loadedAt;
+
+    final int hits;
+
+    Snapshot(Object key, long loadedAt, int hits) {
+      this.key = key;
+      this.loadedAt = loadedAt;
+      this.hits = hits;
+    }
+  }
+
+  private static final Comparator<Snapshot> HOTTEST_FIRST =
+    new Comparator<Snapshot>() {
+      public int compare(Snapshot a, Snapshot b) {
+        return Integer.compare(b.hits, a.hits);
+      }
+    };
+
+  // Entries looked at to pick the least recently read one to evict
+  static final int EVICTION_SAMPLE = 8;
+
+  // Keys share generations, a collision only costs a dropped reload
+  static final int GENERATION_STRIPES = 64;
+
+  static <X> EntityCache<X> cacheFor(
+    Class<X> target, List<FieldMapping> fields, CacheBudget budget) {
+
+    Cached cached = target.getAnnotation(Cached.class);
+
+    if (cached == null)
+      return null;
+
+    return new EntityCache<>(cached, Ticker.systemTicker(), fields, budget);
+  }
+
+  // Replaced when the cache is resized
+  private volatile Cache<Object, Entry<T>> cache;
+
+  private volatile long maximumSize;
+
+  private final long expireAfterAccess;
+
+  private final long refreshAfterNanos;
+
+  private final Ticker ticker;
+
+  private final List<FieldMapping> fields;
+
+  // Null when the cache is bounded by its maximum size
+  private final CacheBudget budget;
+
+  private final AtomicLong weight = new AtomicLong();
+
+  // Eviction samples sweep the cache from a random position, so that every
+  // entry is eventually looked at rather than always the same head ones
+  private Iterator<Map.Entry<Object, Entry<T>>> sweep;
+
+  private Cache<Object, Entry<T>> swept;
+
+  private final AtomicLong requests = new AtomicLong();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  // Bumped by every invalidation, striped by key, so that a reload read
+  // before a write does not put back what the write replaced
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  // Keys with a reload in flight, used to issue at most one reload per key
+  private final Set<Object> refreshing =
+    Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+  EntityCache(Cached cached, Ticker ticker, List<FieldMapping> fields, CacheBudget budget) {
+    this.ticker = ticker;
+    this.fields = fields;
+    this.budget = budget;
+    this.expireAfterAccess = cached.expireAfterAccess();
+    this.refreshAfterNanos = TimeUnit.SECONDS.toNanos(cached.refreshAfterWrite());
+
+    if (budget == null) {
+      this.maximumSize = cached.maximumSize();
+      this.cache = newBuilder().maximumSize(maximumSize).build();
+      return;
+    }
+
+    this.maximumSize = -1;
+    this.cache = newBuilder()
+      .removalListener(new RemovalListener<Object, Entry<T>>() {
+        public void onRemoval(RemovalNotification<Object, Entry<T>> removed) {
+          released(removed.getValue());
+        }
+      })
+      .build();
+
+    budget.register(this);
+  }
+
+  private CacheBuilder<Object, Object> newBuilder() {
+    return CacheBuilder.newBuilder()
+      .expireAfterAccess(expireAfterAccess, TimeUnit.SECONDS)
+      .ticker(ticker);
+  }
+
+  T getIfPresent(Object key) {
+    Entry<T> entry = cache.getIfPresent(key);
+    return entry == null ? null : entry.value;
+  }
+
+  Entry<T> getEntry(Object key) {
+    Entry<T> entry = cache.getIfPresent(key);
+
+    requests.incrementAndGet();
+
+    if (entry != null) {
+      entry.hits++;
+      hits.incrementAndGet();
+
+      if (budget != null) {
+        entry.lastRead = ticker.read();
+      }
+    }
+
+    return entry;
+  }
+
+  void put(Object key, T value) {
+    newEntry(key, value);
+  }
+
+  /**
+   * Caches the entity unless the key was invalidated since `generation`
+   * was taken, in which case it may be stale.
+   */
+  void put(Object key, T value, long generation) {
+    Entry<T> entry = newEntry(key, value);
+
+    if (generations.get(stripe(key)) != generation) {
+      cache.asMap().remove(key, entry);
+    }
+  }
+
+  private Entry<T> newEntry(Object key, T value) {
+    if (budget == null) {
+      Entry<T> ret = new Entry<>(value, ticker.read(), 0);
+      cache.put(key, ret);
+      return ret;
+    }
+
+    int bytes = CacheBudget.weigh(value, fields);
+    Entry<T> ret = new Entry<>(value, ticker.read(), bytes);
+
+    weight.addAndGet(bytes);
+    cache.put(key, ret);
+    budget.added(bytes);
+
+    return ret;
+  }
+
+  /**
+   * The generation to pass to {@link #put(Object, Object, long)} once the
+   * entity has been read. It must be taken before the query is sent.
+   */
+  long generation(Object key) {
+    return generations.get(stripe(key));
+  }
+
+  private static int stripe(Object key) {
+    return (key.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPES;
+  }
+
+  long getWeight() {
+    return weight.get();
+  }
+
+  double hitRate() {
+    long total = requests.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  long getRequests() {
+    return requests.get();
+  }
+
+  long getHits() {
+    return hits.get();
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  /**
+   * The maximum number of entries, or -1 when the cache is bounded by the
+   * mapper's cache budget.
+   */
+  long getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Replaces the cache with an empty one holding up to `maximumSize`
+   * entries. The entries are dropped rather than copied over, so that an
+   * invalidation racing with the resize cannot leave a stale entry behind;
+   * they are loaded again on the next get.
+   */
+  synchronized void resize(long maximumSize) {
+    if (budget != null)
+      throw new IllegalStateException("cache is bounded by the cache budget");
+
+    if (maximumSize < 0)
+      throw new IllegalArgumentException("maximum size must not be negative");
+
+    Cache<Object, Entry<T>> previous = cache;
+
+    this.maximumSize = maximumSize;
+    this.cache = newBuilder().maximumSize(maximumSize).build();
+
+    previous.invalidateAll();
+  }
+
+  /**
+   * Evicts the least recently read of a sample of the entries, returns
+   * false if the cache is empty. Consecutive samples are taken from
+   * consecutive entries of a sweep over the cache.
+   */
+  synchronized boolean evictOne() {
+    Map.Entry<Object, Entry<T>> oldest = null;
+    boolean restarted = false;
+
+    for (int i = 0; i < EVICTION_SAMPLE; ++i) {
+      if (sweep == null || swept != cache || !sweep.hasNext()) {
+        // Don't go around more than once for a single sample
+        if (restarted)
+          break;
+
+        restartSweep();
+        restarted = true;
+
+        if (!sweep.hasNext())
+          break;
+      }
+
+      Map.Entry<Object, Entry<T>> curr = sweep.next();
+
+      if (oldest == null || curr.getValue().lastRead < oldest.getValue().lastRead) {
+        oldest = curr;
+      }
+    }
+
+    if (oldest == null)
+      return false;
+
+    cache.asMap().remove(oldest.getKey(), oldest.getValue());
+    return true;
+  }
+
+  // Costs a walk over up to the whole cache, once per sweep
+  private void restartSweep() {
+    swept = cache;
+    sweep = swept.asMap().entrySet().iterator();
+
+    long size = swept.size();
+
+    if (size <= EVICTION_SAMPLE)
+      return;
+
+    long skip = ThreadLocalRandom.current().nextLong(size);
+
+    for (long i = 0; i < skip && sweep.hasNext(); ++i) {
+      sweep.next();
+    }
+
+    // Too few entries left after the skip, start from the head instead
+    if (!sweep.hasNext()) {
+      sweep = swept.asMap().entrySet().iterator();
+    }
+  }
+
+  private void released(Entry<T> entry) {
+    if (entry != null) {
+      weight.addAndGet(-entry.weight);
+      budget.removed(entry.weight);
+    }
+  }
+
+  void invalidate(Object key) {
+    generations.incrementAndGet(stripe(key));
+    cache.invalidate(key);
+  }
+
+  void invalidateAll() {
+    for (int i = 0; i < GENERATION_STRIPES; ++i) {
+      generations.incrementAndGet(i);
+    }
+
+    cache.invalidateAll();
+  }
+
+  /**
+   * Empties the cache and takes it off the budget, for caches that are no
+   * longer used.
+   */
+  void close() {
+    cache.invalidateAll();
+
+    if (budget != null) {
+      budget.unregister(this);
+    }
+  }
+
+  Set<Object> keys() {
+    return cache.asMap().keySet();
+  }
+
+  /**
+   * Returns the keys of the most read entries, hottest first.
+   */
+  List<Snapshot> hottest(int limit) {
+    long nowNanos = ticker.read();
+    long nowMillis = System.currentTimeMillis();
+
+    List<Snapshot> ret = new ArrayList<>((int) cache.size());
+
+    for (Map.Entry<Object, Entry<T>> curr : cache.asMap().entrySet()) {
+      Entry<T> entry = curr.getValue();
+      long age = TimeUnit.NANOSECONDS.toMillis(nowNanos - entry.loadedAt);
+
+      ret.add(new Snapshot(curr.getKey(), nowMillis - age, entry.hits));
+    }
+
+    Collections.sort(ret, HOTTEST_FIRST);
+
+    return ret.size() > limit ? ret.subList(0, limit) : ret;
+  }
+
+  /**
+   * Returns true if the entry is old enough to be reloaded and no reload for
+   * the key is currently running. When true is returned, the caller owns the
+   * reload and must call {@link #endRefresh(Object)} once it completes.
+   */
+  boolean beginRefresh(Object key, Entry<T> entry) {
+    if (refreshAfterNanos <= 0)
+      return false;
+
+    if (ticker.read() - entry.loadedAt < refreshAfterNanos)
+      return false;
+
+    return refreshing.add(key);
+  }
+
+  void endRefresh(Object key) {
+    refreshing.remove(key);
+  }
+}
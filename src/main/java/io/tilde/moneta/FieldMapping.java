@@ -3,16 +3,22 @@ package io.tilde.moneta;
 import com.datastax.driver.core.DataType;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.exceptions.InvalidTypeException;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Compressed;
+import io.tilde.moneta.annotations.Copied;
+import io.tilde.moneta.annotations.Lazy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Date;
 import java.util.UUID;
 
@@ -55,7 +61,47 @@ public abstract class FieldMapping {
       lookup.unreflectGetter(field),
       lookup.unreflectSetter(field));
 
-    if (UUID.class.isAssignableFrom(type)) {
+    if (field.getAnnotation(Lazy.class) == null)
+      return build(params, field);
+
+    if (primary || type != LazyColumn.class)
+      throw new RuntimeException(
+        "@Lazy is only supported on LazyColumn columns; field=" + field.getName());
+
+    // The value is cast by a mapping of the handle's type argument
+    Class<?> valueType = (Class<?>)
+      ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+
+    return new LazyFieldMapping(params, build(
+      new Params(valueType, params.name, false, params.getter, params.setter),
+      field));
+  }
+
+  /**
+   * Maps a field loaded with a function of a column, writetime or ttl.
+   */
+  static FieldMapping build(String function, String column, Field field)
+    throws IllegalAccessException {
+
+    field.setAccessible(true);
+
+    Params params = new Params(field.getType(),
+      function + "(" + column + ")",
+      false,
+      lookup.unreflectGetter(field),
+      lookup.unreflectSetter(field));
+
+    return new MetadataFieldMapping(params, function, column, build(params, field));
+  }
+
+  private static FieldMapping build(Params params, Field field) {
+    Class<?> type = params.type;
+    Compressed compressed = field.getAnnotation(Compressed.class);
+
+    if (compressed != null) {
+      return new CompressedFieldMapping(params, compressed);
+    }
+    else if (UUID.class.isAssignableFrom(type)) {
       return new UUIDFieldMapping(params);
     }
     else if (String.class.isAssignableFrom(type)) {
@@ -70,6 +116,22 @@ public abstract class FieldMapping {
     else if (long.class.isAssignableFrom(type)) {
       return new LongFieldMapping(params);
     }
+    else if (ByteBuffer.class.isAssignableFrom(type)) {
+      // Views would pin whole responses in the cache, unaccounted for by
+      // the cache budget
+      boolean copy = field.getAnnotation(Copied.class) != null ||
+        field.getDeclaringClass().getAnnotation(Cached.class) != null;
+
+      return new ByteBufferFieldMapping(params, copy);
+    }
+    else if (byte[].class.isAssignableFrom(type)) {
+      // Arrays are compared by identity, they would never match a cached key
+      if (params.primary)
+        throw new RuntimeException(
+          "byte[] fields can't be primary keys, use ByteBuffer; field=" + field.getName());
+
+      return new ByteArrayFieldMapping(params);
+    }
     else {
       throw new RuntimeException("can't handle fields of type `" + type + "`");
     }
@@ -114,6 +176,36 @@ public abstract class FieldMapping {
     }
   }
 
+  /**
+   * The value of the field as written to its column.
+   */
+  public Object toColumn(Object obj) {
+    return encode(get(obj));
+  }
+
+  protected Object encode(Object val) {
+    return val;
+  }
+
+  /**
+   * False when the column must be left out of writes, see LazyColumn.
+   */
+  public boolean hasValue(Object obj) {
+    return true;
+  }
+
+  public boolean isLazy() {
+    return false;
+  }
+
+  /**
+   * True for fields loaded from a function of a column, which are not
+   * columns themselves.
+   */
+  public boolean isMetadata() {
+    return false;
+  }
+
   public Object cast(Row row) {
     DataType type = row.getColumnDefinitions().getType(getName());
 
@@ -228,7 +320,11 @@ public abstract class FieldMapping {
    * @param val the value to set
    */
   public void set(Object obj, Object val) {
-    LOG.trace("setRaw; obj={}; name={}; val={}", obj, name, val);
+    // Called per column of every row read, skip the varargs when not tracing
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("setRaw; obj={}; name={}; val={}", obj, name, val);
+    }
+
     try {
       setter.invoke(obj, val);
     }
@@ -296,6 +392,203 @@ public abstract class FieldMapping {
     }
   }
 
+  /**
+   * Loads blobs as read-only views of the driver's response buffer, or as
+   * a copy when the field is @Copied or its class @Cached. Written buffers
+   * are hex encoded into the CQL of the statement by the 1.0 QueryBuilder,
+   * which copies them and doubles their size on the wire.
+   */
+  static class ByteBufferFieldMapping extends FieldMapping {
+
+    private final boolean copy;
+
+    ByteBufferFieldMapping(Params params, boolean copy) {
+      super(params);
+      this.copy = copy;
+    }
+
+    protected Object cast(ByteBuffer val) {
+      if (val == null)
+        return null;
+
+      if (!copy)
+        return val.asReadOnlyBuffer();
+
+      ByteBuffer ret = ByteBuffer.allocate(val.remaining());
+      ret.put(val.duplicate());
+      ret.flip();
+
+      return ret;
+    }
+  }
+
+  /**
+   * Loads blobs with a single copy out of the driver's response buffer.
+   * Written arrays are hex encoded like buffers, see above.
+   */
+  static class ByteArrayFieldMapping extends FieldMapping {
+
+    ByteArrayFieldMapping(Params params) {
+      super(params);
+    }
+
+    protected Object encode(Object val) {
+      return val == null ? null : ByteBuffer.wrap((byte[]) val);
+    }
+
+    protected Object cast(ByteBuffer val) {
+      if (val == null)
+        return null;
+
+      byte[] ret = new byte[val.remaining()];
+      val.duplicate().get(ret);
+
+      return ret;
+    }
+  }
+
+  static class CompressedFieldMapping extends FieldMapping {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Compressed.Codec codec;
+
+    private final int threshold;
+
+    CompressedFieldMapping(Params params, Compressed compressed) {
+      super(params);
+
+      if (params.type != String.class &&
+        params.type != byte[].class &&
+        params.type != ByteBuffer.class) {
+        throw new RuntimeException(
+          "can't compress fields of type `" + params.type + "`");
+      }
+
+      this.codec = compressed.value();
+      this.threshold = compressed.threshold();
+    }
+
+    protected Object encode(Object val) {
+      byte[] bytes;
+
+      if (val == null) {
+        return null;
+      }
+      else if (val instanceof String) {
+        bytes = ((String) val).getBytes(UTF8);
+      }
+      else if (val instanceof byte[]) {
+        bytes = (byte[]) val;
+      }
+      else {
+        ByteBuffer buf = ((ByteBuffer) val).duplicate();
+        bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+      }
+
+      return Compression.compress(bytes, codec, threshold);
+    }
+
+    protected Object cast(ByteBuffer val) {
+      if (val == null)
+        return null;
+
+      byte[] bytes = Compression.decompress(val);
+
+      if (getType() == String.class) {
+        return new String(bytes, UTF8);
+      }
+      else if (getType() == byte[].class) {
+        return bytes;
+      }
+      else {
+        return ByteBuffer.wrap(bytes);
+      }
+    }
+  }
+
+  /**
+   * Maps a LazyColumn field. Rows do not hold the column, it is read later
+   * by the handle and cast by the mapping of the handle's value type.
+   */
+  static class LazyFieldMapping extends FieldMapping {
+
+    private final FieldMapping value;
+
+    LazyFieldMapping(Params params, FieldMapping value) {
+      super(params);
+      this.value = value;
+    }
+
+    public boolean isLazy() {
+      return true;
+    }
+
+    public boolean hasValue(Object obj) {
+      LazyColumn<?> handle = (LazyColumn<?>) get(obj);
+      return handle != null && handle.isLoaded();
+    }
+
+    public Object toColumn(Object obj) {
+      LazyColumn<?> handle = (LazyColumn<?>) get(obj);
+      return handle == null ? null : value.encode(handle.peek());
+    }
+
+    // An unloaded handle, bound to a loader by the mapping
+    public Object cast(Row row) {
+      return new LazyColumn<>();
+    }
+
+    /**
+     * The value of the column, from a row that selected it.
+     */
+    Object castValue(Row row) {
+      return value.cast(row);
+    }
+  }
+
+  /**
+   * Maps a field to the writetime or ttl of a column. It is selected but
+   * never written.
+   */
+  static class MetadataFieldMapping extends FieldMapping {
+
+    private final String function;
+
+    private final String column;
+
+    private final FieldMapping value;
+
+    MetadataFieldMapping(Params params, String function, String column,
+                         FieldMapping value) {
+      super(params);
+      this.function = function;
+      this.column = column;
+      this.value = value;
+    }
+
+    String getFunction() {
+      return function;
+    }
+
+    String getColumn() {
+      return column;
+    }
+
+    public boolean isMetadata() {
+      return true;
+    }
+
+    public boolean hasValue(Object obj) {
+      return false;
+    }
+
+    public Object cast(Row row) {
+      return value.cast(row);
+    }
+  }
+
   static class LongFieldMapping extends FieldMapping {
     LongFieldMapping(Params params) {
       super(params);
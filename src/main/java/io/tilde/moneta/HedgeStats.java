@@ -0,0 +1,47 @@
+package io.tilde.moneta;
+
+/**
+ * How often hedged reads of an entity were sent, and how often the hedged
+ * attempt answered before the first one.
+ *
+ * @author Carl Lerche
+ */
+public class HedgeStats {
+
+  private final long reads;
+
+  private final long hedged;
+
+  private final long won;
+
+  HedgeStats(long reads, long hedged, long won) {
+    this.reads = reads;
+    this.hedged = hedged;
+    this.won = won;
+  }
+
+  /**
+   * Reads that were sent with hedging enabled.
+   */
+  public long getReads() {
+    return reads;
+  }
+
+  /**
+   * Reads for which a second attempt was sent.
+   */
+  public long getHedged() {
+    return hedged;
+  }
+
+  /**
+   * Reads that were answered by the second attempt.
+   */
+  public long getWon() {
+    return won;
+  }
+
+  public String toString() {
+    return "HedgeStats; reads=" + reads + "; hedged=" + hedged + "; won=" + won;
+  }
+}
@@ -0,0 +1,195 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.Query;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Speculative execution of the reads of an entity. When the first attempt
+ * of a read has not answered after the hedge delay, a second one is sent
+ * and the read completes with whichever answers first. The load balancing
+ * policy picks the host of each attempt, so with a round robin policy the
+ * second attempt goes to the next host.
+ *
+ * The losing attempt is cancelled, which only drops its result. The 1.0
+ * driver can't abort a statement in flight, so every hedged read costs the
+ * cluster a full second read, also on a replica that is already slow.
+ *
+ * @author Carl Lerche
+ */
+class Hedging {
+
+  // Number of recent latencies the percentile is computed from
+  static final int SAMPLES = 1024;
+
+  // The percentiles are recomputed after this many new latencies
+  static final int RECOMPUTE = 128;
+
+  // Percentiles tracked at once, reads asking for others only wait the
+  // hedge delay
+  static final int MAX_PERCENTILES = 16;
+
+  private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+
+  private final AtomicLong recorded = new AtomicLong();
+
+  // Latency at each percentile reads asked for, in micros, or -1 until
+  // there are enough samples
+  private final ConcurrentMap<Double, Long> thresholds = new ConcurrentHashMap<>();
+
+  private final AtomicLong reads = new AtomicLong();
+
+  private final AtomicLong hedged = new AtomicLong();
+
+  private final AtomicLong won = new AtomicLong();
+
+  HedgeStats getStats() {
+    return new HedgeStats(reads.get(), hedged.get(), won.get());
+  }
+
+  ListenableFuture<ResultSet> execute(
+    final Session session, final Query query, OperationOptions options) {
+
+    reads.incrementAndGet();
+
+    final SettableFuture<ResultSet> ret = SettableFuture.create();
+    final AtomicInteger outstanding = new AtomicInteger(1);
+    final ListenableFuture<ResultSet> first = session.executeAsync(query);
+    final Future<?>[] second = new Future<?>[1];
+
+    final Future<?> hedge = Timeouts.schedule(new Runnable() {
+      public void run() {
+        if (ret.isDone())
+          return;
+
+        hedged.incrementAndGet();
+        outstanding.incrementAndGet();
+
+        ListenableFuture<ResultSet> attempt = session.executeAsync(query);
+
+        synchronized (second) {
+          second[0] = attempt;
+
+          // The read completed before the attempt was published, the
+          // listener below could not see it
+          if (ret.isDone()) {
+            attempt.cancel(true);
+          }
+        }
+
+        forward(attempt, ret, first, outstanding, true);
+      }
+    }, delay(options));
+
+    forward(first, ret, null, outstanding, false);
+
+    // Whichever way the read completes, the other attempt's result is
+    // dropped. Its statement still runs to completion on the server.
+    ret.addListener(new Runnable() {
+      public void run() {
+        hedge.cancel(false);
+        first.cancel(true);
+
+        synchronized (second) {
+          if (second[0] != null) {
+            second[0].cancel(true);
+          }
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    return ret;
+  }
+
+  private void forward(final ListenableFuture<ResultSet> attempt,
+                       final SettableFuture<ResultSet> ret,
+                       final ListenableFuture<ResultSet> other,
+                       final AtomicInteger outstanding,
+                       final boolean isHedge) {
+
+    final long start = System.nanoTime();
+
+    Futures.addCallback(attempt, new FutureCallback<ResultSet>() {
+      public void onSuccess(ResultSet res) {
+        record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        if (ret.set(res) && isHedge) {
+          won.incrementAndGet();
+        }
+      }
+
+      public void onFailure(Throwable t) {
+        // Only fail once no attempt is left that could still answer
+        if (outstanding.decrementAndGet() == 0) {
+          ret.setException(t);
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  private long delay(OperationOptions options) {
+    long delay = options.getHedgeDelay();
+
+    if (options.getHedgePercentile() > 0) {
+      long micros = threshold(options.getHedgePercentile());
+
+      if (micros >= 0) {
+        delay = Math.max(delay, TimeUnit.MICROSECONDS.toMillis(micros));
+      }
+    }
+
+    return Math.max(delay, 1);
+  }
+
+  /**
+   * Latency at the percentile in micros, or -1 until it is known. The
+   * percentile is tracked from then on.
+   */
+  long threshold(double percentile) {
+    Long micros = thresholds.get(percentile);
+
+    if (micros == null) {
+      if (thresholds.size() >= MAX_PERCENTILES)
+        return -1;
+
+      thresholds.putIfAbsent(percentile, -1L);
+      return -1;
+    }
+
+    return micros;
+  }
+
+  private void record(long micros) {
+    long n = recorded.getAndIncrement();
+
+    latencies.set((int) (n % SAMPLES), micros);
+
+    if (!thresholds.isEmpty() && n >= SAMPLES && n % RECOMPUTE == 0) {
+      long[] sorted = new long[SAMPLES];
+
+      for (int i = 0; i < SAMPLES; ++i) {
+        sorted[i] = latencies.get(i);
+      }
+
+      Arrays.sort(sorted);
+
+      for (double percentile : thresholds.keySet()) {
+        thresholds.put(percentile, sorted[(int) Math.min(SAMPLES - 1, SAMPLES * percentile / 100)]);
+      }
+    }
+  }
+}
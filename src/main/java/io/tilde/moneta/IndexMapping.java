@@ -0,0 +1,85 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.querybuilder.Clause;
+import com.datastax.driver.core.querybuilder.Delete;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
+
+import java.util.List;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+
+/**
+ * Maps an @Index column to its lookup table, whose partition key is the
+ * indexed value and whose remaining columns are the entity's primary key.
+ *
+ * @author Carl Lerche
+ */
+class IndexMapping {
+
+  private final String keyspace;
+
+  private final String table;
+
+  private final FieldMapping field;
+
+  private final KeyMapping primaryKey;
+
+  IndexMapping(String keyspace, String table, FieldMapping field, KeyMapping primaryKey) {
+    this.keyspace = keyspace;
+    this.table = table;
+    this.field = field;
+    this.primaryKey = primaryKey;
+  }
+
+  IndexMapping forKeyspace(String keyspace) {
+    return new IndexMapping(keyspace, table, field, primaryKey);
+  }
+
+  String getTable() {
+    return table;
+  }
+
+  FieldMapping getField() {
+    return field;
+  }
+
+  Insert insertFor(Object value, Object entity) {
+    Insert query = QueryBuilder.insertInto(keyspace, table)
+      .value(field.getName(), value);
+
+    for (FieldMapping key : primaryKey.getFields()) {
+      query.value(key.getName(), key.get(entity));
+    }
+
+    return query;
+  }
+
+  Delete deleteFor(Object value, Object key) {
+    Delete query = QueryBuilder.delete().from(keyspace, table);
+
+    query.where(eq(field.getName(), value));
+
+    for (Clause clause : primaryKey.predicateForGet(key)) {
+      query.where(clause);
+    }
+
+    return query;
+  }
+
+  Select selectFor(Object value) {
+    List<FieldMapping> keys = primaryKey.getFields();
+    String[] columns = new String[keys.size()];
+
+    for (int i = 0; i < columns.length; ++i) {
+      columns[i] = keys.get(i).getName();
+    }
+
+    Select query = QueryBuilder.select(columns).from(keyspace, table);
+
+    query.where(eq(field.getName(), value)).limit(1);
+
+    return query;
+  }
+}
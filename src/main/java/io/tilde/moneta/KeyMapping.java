@@ -1,5 +1,6 @@
 package io.tilde.moneta;
 
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.querybuilder.Clause;
 
 import java.util.ArrayList;
@@ -32,4 +33,16 @@ public abstract class KeyMapping {
 
   public abstract List<Clause> predicateForGet(Object key);
 
+  public abstract List<FieldMapping> getFields();
+
+  /**
+   * The key of the given entity, as passed to MonetaMapper#get.
+   */
+  public abstract Object keyOf(Object entity);
+
+  /**
+   * The key held by the primary key columns of the row.
+   */
+  public abstract Object keyOf(Row row);
+
 }
@@ -0,0 +1,162 @@
+package io.tilde.moneta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Entities of a composite key class whose leading primary key columns
+ * equal the prefix, optionally bounded on the column that follows it.
+ * The prefix holds at least the partition key, so that the range is read
+ * from a single partition.
+ *
+ * Instances are immutable, every bound method returns a copy.
+ *
+ * @author Carl Lerche
+ */
+public final class KeyRange {
+
+  private final List<Object> prefix;
+
+  private final Object start;
+
+  private final boolean startInclusive;
+
+  private final Object end;
+
+  private final boolean endInclusive;
+
+  private final int limit;
+
+  public static KeyRange of(Object part, Object... parts) {
+    List<Object> prefix = new ArrayList<>(parts.length + 1);
+    prefix.add(part);
+    prefix.addAll(Arrays.asList(parts));
+
+    return new KeyRange(prefix, null, false, null, false, 0);
+  }
+
+  public static KeyRange of(List<? extends Object> prefix) {
+    if (prefix.isEmpty())
+      throw new IllegalArgumentException("prefix must hold the partition key");
+
+    return new KeyRange(new ArrayList<Object>(prefix), null, false, null, false, 0);
+  }
+
+  private KeyRange(List<Object> prefix, Object start, boolean startInclusive,
+                   Object end, boolean endInclusive, int limit) {
+    this.prefix = Collections.unmodifiableList(prefix);
+    this.start = start;
+    this.startInclusive = startInclusive;
+    this.end = end;
+    this.endInclusive = endInclusive;
+    this.limit = limit;
+  }
+
+  /**
+   * Starts the range at the value, inclusive.
+   */
+  public KeyRange from(Object val) {
+    return new KeyRange(prefix, val, true, end, endInclusive, limit);
+  }
+
+  /**
+   * Starts the range right after the value.
+   */
+  public KeyRange after(Object val) {
+    return new KeyRange(prefix, val, false, end, endInclusive, limit);
+  }
+
+  /**
+   * Ends the range at the value, inclusive.
+   */
+  public KeyRange to(Object val) {
+    return new KeyRange(prefix, start, startInclusive, val, true, limit);
+  }
+
+  /**
+   * Ends the range right before the value.
+   */
+  public KeyRange before(Object val) {
+    return new KeyRange(prefix, start, startInclusive, val, false, limit);
+  }
+
+  /**
+   * Returns at most the given number of entities, the first ones in
+   * clustering order.
+   */
+  public KeyRange withLimit(int val) {
+    if (val <= 0)
+      throw new IllegalArgumentException("limit must be positive");
+
+    return new KeyRange(prefix, start, startInclusive, end, endInclusive, val);
+  }
+
+  public List<Object> getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * The value of the first primary key column, which all the entities of
+   * the range share.
+   */
+  Object getPartition() {
+    return prefix.get(0);
+  }
+
+  boolean isBounded() {
+    return start != null || end != null;
+  }
+
+  Object getStart() {
+    return start;
+  }
+
+  boolean isStartInclusive() {
+    return startInclusive;
+  }
+
+  Object getEnd() {
+    return end;
+  }
+
+  boolean isEndInclusive() {
+    return endInclusive;
+  }
+
+  // Zero when unlimited
+  int getLimit() {
+    return limit;
+  }
+
+  public int hashCode() {
+    return Objects.hash(prefix, start, startInclusive, end, endInclusive, limit);
+  }
+
+  public boolean equals(Object o) {
+    if (o == this)
+      return true;
+
+    if (!(o instanceof KeyRange))
+      return false;
+
+    KeyRange other = (KeyRange) o;
+
+    return
+      prefix.equals(other.prefix) &&
+      Objects.equals(start, other.start) &&
+      startInclusive == other.startInclusive &&
+      Objects.equals(end, other.end) &&
+      endInclusive == other.endInclusive &&
+      limit == other.limit;
+  }
+
+  public String toString() {
+    return "KeyRange[prefix=" + prefix +
+      (start == null ? "" : (startInclusive ? "; from=" : "; after=") + start) +
+      (end == null ? "" : (endInclusive ? "; to=" : "; before=") + end) +
+      (limit == 0 ? "" : "; limit=" + limit) + "]";
+  }
+}
@@ -0,0 +1,91 @@
+package io.tilde.moneta;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * The value of a @Lazy column. Entities read from the cluster get handles
+ * that read the column the first time get() is called; when the entities
+ * came from one getAll, the column is read for all of them at once.
+ *
+ * New entities set their value with LazyColumn.of(value). Only columns
+ * that have been read or set are written by persist.
+ *
+ * @author Carl Lerche
+ */
+public final class LazyColumn<V> {
+
+  private volatile boolean loaded;
+
+  private volatile V value;
+
+  // Null for values that were set rather than read
+  private volatile LazyLoader loader;
+
+  LazyColumn() {
+  }
+
+  private LazyColumn(V value) {
+    set(value);
+  }
+
+  public static <V> LazyColumn<V> of(V value) {
+    return new LazyColumn<>(value);
+  }
+
+  /**
+   * The value of the column, read from the cluster if it was not already.
+   */
+  public V get() {
+    if (!loaded) {
+      LazyLoader loader = this.loader;
+
+      if (loader == null)
+        throw new IllegalStateException("lazy column is not bound to a session");
+
+      try {
+        loader.load(this);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+      catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      }
+    }
+
+    return value;
+  }
+
+  public synchronized void set(V value) {
+    this.value = value;
+    this.loaded = true;
+  }
+
+  public boolean isLoaded() {
+    return loaded;
+  }
+
+  /**
+   * The value if it was loaded, without reading it.
+   */
+  V peek() {
+    return value;
+  }
+
+  // Called by the loader, does not override a value set in the meantime
+  @SuppressWarnings("unchecked")
+  synchronized void loaded(Object value) {
+    if (!loaded) {
+      set((V) value);
+    }
+  }
+
+  void bind(LazyLoader loader) {
+    this.loader = loader;
+  }
+
+  public String toString() {
+    return loaded ? "LazyColumn(" + value + ")" : "LazyColumn(<not loaded>)";
+  }
+}
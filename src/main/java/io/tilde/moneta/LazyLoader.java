@@ -0,0 +1,62 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.Session;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads one @Lazy column for a group of entities, the entities of a get
+ * or of a getAll. The first handle of the group to be accessed reads the
+ * column for every handle of the group that is not loaded yet.
+ *
+ * @author Carl Lerche
+ */
+class LazyLoader {
+
+  private final Session session;
+
+  private final Mapping<?> mapping;
+
+  private final FieldMapping field;
+
+  // Handles not loaded yet, with the key of their entity
+  private final Map<LazyColumn<?>, Object> pending = new LinkedHashMap<>();
+
+  LazyLoader(Session session, Mapping<?> mapping, FieldMapping field) {
+    this.session = session;
+    this.mapping = mapping;
+    this.field = field;
+  }
+
+  synchronized void add(LazyColumn<?> handle, Object key) {
+    handle.bind(this);
+    pending.put(handle, key);
+  }
+
+  synchronized void load(LazyColumn<?> handle)
+    throws InterruptedException, ExecutionException {
+
+    if (handle.isLoaded())
+      return;
+
+    Map<LazyColumn<?>, Object> batch = new LinkedHashMap<>();
+
+    for (Map.Entry<LazyColumn<?>, Object> entry : pending.entrySet()) {
+      if (!entry.getKey().isLoaded()) {
+        batch.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    Map<Object, Object> values = mapping.readLazy(
+      session, field, new ArrayList<>(batch.values())).get();
+
+    for (Map.Entry<LazyColumn<?>, Object> entry : batch.entrySet()) {
+      entry.getKey().loaded(values.get(entry.getValue()));
+    }
+
+    pending.clear();
+  }
+}
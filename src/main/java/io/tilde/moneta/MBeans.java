@@ -0,0 +1,323 @@
+package io.tilde.moneta;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registers the MBeans of a mapper and of its mappings with the platform
+ * MBean server, and unregisters them when the mapper is closed.
+ *
+ * Several mappers may talk to the same keyspace, the names of the later
+ * ones get a numeric suffix. Failing to register is logged and otherwise
+ * ignored, management is not worth failing requests over.
+ *
+ * @author Carl Lerche
+ */
+class MBeans {
+  private static Logger LOG = LoggerFactory.getLogger(MBeans.class);
+
+  static final String DOMAIN = "io.tilde.moneta";
+
+  private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+  private final List<ObjectName> registered = new CopyOnWriteArrayList<>();
+
+  private final ConcurrentMap<Mapping<?>, ObjectName> mappings = new ConcurrentHashMap<>();
+
+  private final String name;
+
+  private final String keyspace;
+
+  MBeans(MonetaMapper mapper, String keyspace) {
+    this.keyspace = keyspace;
+    this.name = registerMapper(new MapperBean(mapper, keyspace),
+      keyspace == null ? "default" : keyspace);
+  }
+
+  void register(Mapping<?> mapping) {
+    if (name == null)
+      return;
+
+    try {
+      String props = "type=Mapping,mapper=" + name;
+
+      // Mappings of views of other keyspaces
+      if (mapping.getKeyspace() != null && !mapping.getKeyspace().equals(keyspace)) {
+        props += ",keyspace=" + mapping.getKeyspace();
+      }
+
+      ObjectName objectName = new ObjectName(
+        DOMAIN + ":" + props + ",entity=" + mapping.getTarget().getName());
+
+      server.registerMBean(
+        new StandardMBean(new MappingBean(mapping), MappingMXBean.class, true), objectName);
+
+      registered.add(objectName);
+      mappings.put(mapping, objectName);
+    }
+    catch (JMException e) {
+      LOG.warn("could not register mapping mbean; class={}; msg={}",
+        mapping.getTarget().getName(), e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Unregisters the MBean of a mapping of a closed keyspace view.
+   */
+  void unregister(Mapping<?> mapping) {
+    ObjectName objectName = mappings.remove(mapping);
+
+    if (objectName != null) {
+      registered.remove(objectName);
+      unregister(objectName);
+    }
+  }
+
+  void close() {
+    for (ObjectName objectName : registered) {
+      unregister(objectName);
+    }
+
+    registered.clear();
+    mappings.clear();
+  }
+
+  private void unregister(ObjectName objectName) {
+    try {
+      server.unregisterMBean(objectName);
+    }
+    catch (JMException e) {
+      LOG.warn("could not unregister mbean; name={}; msg={}", objectName, e.getMessage());
+    }
+  }
+
+  // Returns the name the mapper was registered under, null if it was not
+  private String registerMapper(MapperBean bean, String base) {
+    for (int i = 1; ; ++i) {
+      String candidate = i == 1 ? base : base + "-" + i;
+
+      try {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=Mapper,name=" + candidate);
+
+        server.registerMBean(
+          new StandardMBean(bean, MapperMXBean.class, true), objectName);
+
+        registered.add(objectName);
+        return candidate;
+      }
+      catch (InstanceAlreadyExistsException e) {
+        // Taken by another mapper, try the next suffix
+      }
+      catch (JMException e) {
+        LOG.warn("could not register mapper mbean; keyspace={}; msg={}",
+          base, e.getMessage(), e);
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Parses a key written the way it is printed, components of composite
+   * keys separated by commas.
+   */
+  static Object parseKey(KeyMapping primaryKey, String key) {
+    List<FieldMapping> fields = primaryKey.getFields();
+
+    if (fields.size() == 1)
+      return parse(fields.get(0), key.trim());
+
+    String[] parts = key.split(",", -1);
+
+    if (parts.length != fields.size())
+      throw new IllegalArgumentException("expected " + fields.size() +
+        " key components; key=" + key);
+
+    List<Object> components = new ArrayList<>();
+
+    for (int i = 0; i < parts.length; ++i) {
+      components.add(parse(fields.get(i), parts[i].trim()));
+    }
+
+    return CompositeKey.of(components);
+  }
+
+  private static Object parse(FieldMapping field, String val) {
+    Class<?> type = field.getType();
+
+    if (type == UUID.class)
+      return UUID.fromString(val);
+
+    if (type == String.class)
+      return val;
+
+    if (type == int.class || type == Integer.class)
+      return Integer.parseInt(val);
+
+    if (type == long.class || type == Long.class)
+      return Long.parseLong(val);
+
+    if (type == boolean.class || type == Boolean.class)
+      return Boolean.parseBoolean(val);
+
+    throw new IllegalArgumentException("cannot parse key of type; field=" +
+      field.getName() + "; type=" + type.getName());
+  }
+
+  private static String[] namesOf(Collection<FieldMapping> fields) {
+    List<String> ret = new ArrayList<>();
+
+    for (FieldMapping field : fields) {
+      ret.add(field.getName());
+    }
+
+    return ret.toArray(new String[ret.size()]);
+  }
+
+  static class MapperBean implements MapperMXBean {
+
+    private final MonetaMapper mapper;
+
+    private final String keyspace;
+
+    MapperBean(MonetaMapper mapper, String keyspace) {
+      this.mapper = mapper;
+      this.keyspace = keyspace;
+    }
+
+    public String getKeyspace() {
+      return keyspace;
+    }
+
+    public String[] getEntityClasses() {
+      List<String> ret = new ArrayList<>();
+
+      for (Mapping<?> mapping : mapper.getMappings()) {
+        ret.add(mapping.getTarget().getName());
+      }
+
+      return ret.toArray(new String[ret.size()]);
+    }
+
+    public long getCacheBudget() {
+      return mapper.getCacheBudget();
+    }
+
+    public long getCachedBytes() {
+      return mapper.getCachedBytes();
+    }
+
+    public void clearCaches() {
+      for (Mapping<?> mapping : mapper.getMappings()) {
+        mapping.invalidateAll();
+      }
+
+      for (MonetaMapper view : mapper.getViews()) {
+        for (Mapping<?> mapping : view.getMappings()) {
+          mapping.invalidateAll();
+        }
+      }
+    }
+  }
+
+  static class MappingBean implements MappingMXBean {
+
+    private final Mapping<?> mapping;
+
+    MappingBean(Mapping<?> mapping) {
+      this.mapping = mapping;
+    }
+
+    public String getEntityClass() {
+      return mapping.getTarget().getName();
+    }
+
+    public String getKeyspace() {
+      return mapping.getKeyspace();
+    }
+
+    public String getTable() {
+      return mapping.getTable();
+    }
+
+    public String[] getColumns() {
+      return namesOf(mapping.getFields());
+    }
+
+    public String[] getPrimaryKey() {
+      return namesOf(mapping.getPrimaryKey().getFields());
+    }
+
+    public boolean isCached() {
+      return mapping.getCache() != null;
+    }
+
+    public long getCacheSize() {
+      EntityCache<?> cache = mapping.getCache();
+      return cache == null ? 0 : cache.size();
+    }
+
+    public long getCacheMaximumSize() {
+      EntityCache<?> cache = mapping.getCache();
+      return cache == null ? 0 : cache.getMaximumSize();
+    }
+
+    public long getCacheRequests() {
+      EntityCache<?> cache = mapping.getCache();
+      return cache == null ? 0 : cache.getRequests();
+    }
+
+    public long getCacheHits() {
+      EntityCache<?> cache = mapping.getCache();
+      return cache == null ? 0 : cache.getHits();
+    }
+
+    public double getCacheHitRate() {
+      EntityCache<?> cache = mapping.getCache();
+      return cache == null ? 0 : cache.hitRate();
+    }
+
+    public long getCachedBytes() {
+      EntityCache<?> cache = mapping.getCache();
+      return cache == null ? 0 : cache.getWeight();
+    }
+
+    public int getInFlightReads() {
+      return mapping.getInFlightReads();
+    }
+
+    public int getInFlightWrites() {
+      return mapping.getInFlightWrites();
+    }
+
+    public void invalidate(String key) {
+      mapping.invalidate(parseKey(mapping.getPrimaryKey(), key));
+    }
+
+    public void clearCache() {
+      mapping.invalidateAll();
+    }
+
+    public void resizeCache(long maximumSize) {
+      EntityCache<?> cache = mapping.getCache();
+
+      if (cache == null)
+        throw new IllegalStateException("entity is not cached; class=" + getEntityClass());
+
+      cache.resize(maximumSize);
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package io.tilde.moneta;
+
+/**
+ * Management interface of a MonetaMapper, registered as
+ * `io.tilde.moneta:type=Mapper,name=<keyspace>`. Every mapped entity class
+ * has a {@link MappingMXBean} of its own.
+ *
+ * @author Carl Lerche
+ */
+public interface MapperMXBean {
+
+  String getKeyspace();
+
+  /**
+   * Names of the entity classes mapped so far.
+   */
+  String[] getEntityClasses();
+
+  /**
+   * The shared cache budget in bytes, or -1 when none is configured.
+   */
+  long getCacheBudget();
+
+  /**
+   * Estimated bytes held by the entity caches, or -1 when no cache budget
+   * is configured.
+   */
+  long getCachedBytes();
+
+  /**
+   * Empties the caches of every entity class.
+   */
+  void clearCaches();
+}
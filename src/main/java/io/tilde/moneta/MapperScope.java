@@ -0,0 +1,188 @@
+package io.tilde.moneta;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A unit of work, for example a web request, in which every get of the
+ * same class and key returns the same instance. Concurrent gets of a key
+ * share a single load. Entities persisted in the scope replace the loaded
+ * ones and deleted ones are forgotten.
+ *
+ * While open, the scope is used by the mapper's get methods on the thread
+ * that opened it; other threads can use its own get methods. It must be
+ * closed on the opening thread, typically with try-with-resources.
+ *
+ * @author Carl Lerche
+ */
+public class MapperScope implements AutoCloseable {
+
+  private static final ThreadLocal<MapperScope> current = new ThreadLocal<>();
+
+  private final MonetaMapper mapper;
+
+  // The scope that was open on the thread before this one
+  private final MapperScope previous;
+
+  private final ConcurrentMap<Key, ListenableFuture<?>> entities = new ConcurrentHashMap<>();
+
+  private volatile boolean closed;
+
+  MapperScope(MonetaMapper mapper) {
+    this.mapper = mapper;
+    this.previous = current.get();
+
+    current.set(this);
+  }
+
+  /**
+   * The scope open on the current thread for the mapper, if any.
+   */
+  static MapperScope current(MonetaMapper mapper) {
+    MapperScope ret = current.get();
+    return ret != null && ret.mapper == mapper ? ret : null;
+  }
+
+  public <T> T get(Class<T> klass, Object key) {
+    return mapper.await(getOwnAsync(klass, key, null));
+  }
+
+  public <T> ListenableFuture<T> getAsync(Class<T> klass, Object key) {
+    return getAsync(klass, key, null);
+  }
+
+  /**
+   * The entity of the scope, loaded with the options if it is not there.
+   * The options of the first get of a key are the ones used.
+   */
+  @SuppressWarnings("unchecked")
+  <T> ListenableFuture<T> getAsync(Class<T> klass, Object key, OperationOptions options) {
+    if (closed)
+      throw new IllegalStateException("scope is closed");
+
+    final Key id = new Key(klass, key);
+    ListenableFuture<?> existing = entities.get(id);
+
+    if (existing != null)
+      return (ListenableFuture<T>) existing;
+
+    final SettableFuture<T> ret = SettableFuture.create();
+    existing = entities.putIfAbsent(id, ret);
+
+    if (existing != null)
+      return (ListenableFuture<T>) existing;
+
+    final ListenableFuture<T> load = mapper.load(klass, key, options);
+
+    Futures.addCallback(
+      load,
+      new FutureCallback<T>() {
+        public void onSuccess(T obj) {
+          ret.set(obj);
+        }
+
+        // Failed loads are not kept, the next get tries again
+        public void onFailure(Throwable t) {
+          entities.remove(id, ret);
+          ret.setException(t);
+        }
+      },
+      MoreExecutors.sameThreadExecutor());
+
+    // A caller that cancels the future of getAsync cancels the load for the
+    // whole scope, the next get tries again. The blocking gets wait on
+    // their own future instead.
+    ret.addListener(new Runnable() {
+      public void run() {
+        if (ret.isCancelled()) {
+          entities.remove(id, ret);
+          load.cancel(true);
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    return ret;
+  }
+
+  /**
+   * Like getAsync, but cancelling the returned future only gives up this
+   * caller's wait, the load goes on for the other gets of the key.
+   */
+  <T> ListenableFuture<T> getOwnAsync(Class<T> klass, Object key, OperationOptions options) {
+    return Timeouts.shielded(getAsync(klass, key, options));
+  }
+
+  void put(Class<?> klass, Object key, Object entity) {
+    if (!closed) {
+      entities.put(new Key(klass, key), Futures.immediateFuture(entity));
+    }
+  }
+
+  void evict(Class<?> klass, Object key) {
+    entities.remove(new Key(klass, key));
+  }
+
+  /**
+   * Forgets the entities of the class whose key starts with the range's
+   * prefix, its bounds are not looked at.
+   */
+  void evict(Class<?> klass, KeyRange range) {
+    List<Object> prefix = range.getPrefix();
+
+    for (Key id : entities.keySet()) {
+      if (id.klass == klass && Mapping.startsWith(id.key, prefix)) {
+        entities.remove(id);
+      }
+    }
+  }
+
+  /**
+   * Discards the entities of the scope and restores the scope that was
+   * open before it, if any.
+   */
+  public void close() {
+    closed = true;
+    entities.clear();
+
+    if (current.get() == this) {
+      if (previous == null) {
+        current.remove();
+      }
+      else {
+        current.set(previous);
+      }
+    }
+  }
+
+  static class Key {
+
+    final Class<?> klass;
+
+    final Object key;
+
+    Key(Class<?> klass, Object key) {
+      this.klass = klass;
+      this.key = key;
+    }
+
+    public int hashCode() {
+      return 31 * klass.hashCode() + (key == null ? 0 : key.hashCode());
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key))
+        return false;
+
+      Key other = (Key) o;
+      return klass == other.klass &&
+        (key == null ? other.key == null : key.equals(other.key));
+    }
+  }
+}
@@ -1,22 +1,30 @@
 package io.tilde.moneta;
 
+import com.datastax.driver.core.Query;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.datastax.driver.core.querybuilder.Batch;
 import com.datastax.driver.core.querybuilder.Clause;
+import com.datastax.driver.core.querybuilder.Delete;
 import com.datastax.driver.core.querybuilder.Insert;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
 import com.datastax.driver.core.querybuilder.Select;
 import com.google.common.base.Function;
-import com.google.common.base.Functions;
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import io.tilde.moneta.annotations.Cached;
+import com.google.common.util.concurrent.MoreExecutors;
 import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Index;
+import io.tilde.moneta.annotations.Lazy;
 import io.tilde.moneta.annotations.PrimaryKey;
 import io.tilde.moneta.annotations.Table;
+import io.tilde.moneta.annotations.Ttl;
+import io.tilde.moneta.annotations.WriteTime;
 import io.tilde.moneta.loaders.ConstructorLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,8 +32,24 @@ import org.slf4j.LoggerFactory;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.eq;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.in;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
 
 /**
  *
@@ -34,6 +58,12 @@ import java.util.concurrent.TimeUnit;
 class Mapping<T> {
   private static Logger LOG = LoggerFactory.getLogger(Mapping.class);
 
+  // Keys per IN query when reading a lazy column
+  static final int LAZY_BATCH_SIZE = 100;
+
+  // Deletes per unlogged batch, larger ones would load the coordinator
+  static final int DELETE_BATCH_SIZE = 100;
+
   // Used to lookup the classes constructor
   private static MethodHandles.Lookup lookup = MethodHandles.lookup();
 
@@ -49,27 +79,243 @@ class Mapping<T> {
 
   private final List<FieldMapping> fields;
 
-  private final Cache<Object, T> cache;
+  private final List<FieldMapping> lazyFields = new ArrayList<>();
+
+  // False when lazy or metadata fields require listing the selected columns
+  private final boolean selectsAll;
+
+  // Lookup tables of the @Index columns, by column name
+  private final Map<String, IndexMapping> indexes;
+
+  private final EntityCache<T> cache;
+
+  // Null unless the class is @CachedPartitions
+  private final PartitionCache<T> partitionCache;
+
+  // Runs row decoding and future callbacks
+  private final Executor executor;
+
+  // Consistency, timeouts and retry policy of the entity's statements
+  private final OperationOptions options;
+
+  private final Hedging hedging = new Hedging();
+
+  // Null unless slow statements are logged
+  private final SlowQueryLog slowLog;
+
+  // Statements sent to Cassandra that have not completed yet
+  private final AtomicInteger inFlightReads = new AtomicInteger();
+
+  private final AtomicInteger inFlightWrites = new AtomicInteger();
 
   Mapping(Class<T> target, String keyspace)
     throws IllegalAccessException {
-    this(target, keyspace, null);
+    this(target, keyspace, MoreExecutors.sameThreadExecutor());
   }
 
-  Mapping(Class<T> target, String keyspace, String table)
+  Mapping(Class<T> target, String keyspace, Executor executor)
+    throws IllegalAccessException {
+    this(target, keyspace, null, executor, OperationOptions.forEntity(target), null, null);
+  }
+
+  Mapping(Class<T> target, String keyspace, String table, Executor executor,
+          OperationOptions options, SlowQueryLog slowLog, CacheBudget budget)
     throws IllegalAccessException {
 
     this.target = target;
     this.keyspace = keyspace;
+    this.executor = executor;
+    this.options = options;
+    this.slowLog = slowLog;
     this.table = table != null ? table : tableFor(target);
     this.fields = fieldMappingsFor(target);
 
     if (fields.isEmpty())
       throw new IllegalArgumentException("target class has no defined columns");
 
+    boolean selectsAll = true;
+
+    for (FieldMapping field : fields) {
+      if (field.isLazy()) {
+        lazyFields.add(field);
+      }
+
+      if (field.isLazy() || field.isMetadata()) {
+        selectsAll = false;
+      }
+    }
+
+    this.selectsAll = selectsAll;
     this.primaryKey = KeyMapping.mappingFor(fields);
+    this.indexes = indexMappingsFor(target, keyspace, this.table, fields, primaryKey);
     this.loader = ConstructorLoader.loaderFor(target, fields);
-    this.cache = cacheFor(target);
+    this.cache = EntityCache.cacheFor(target, fields, budget);
+    this.partitionCache = PartitionCache.cacheFor(target);
+  }
+
+  // Shares the reflected metadata of the template, only the statements
+  // and the caches are bound to the keyspace
+  private Mapping(Mapping<T> template, String keyspace, CacheBudget budget) {
+    this.target = template.target;
+    this.keyspace = keyspace;
+    this.executor = template.executor;
+    this.options = template.options;
+    this.slowLog = template.slowLog;
+    this.table = template.table;
+    this.fields = template.fields;
+    this.lazyFields.addAll(template.lazyFields);
+    this.selectsAll = template.selectsAll;
+    this.primaryKey = template.primaryKey;
+    this.loader = template.loader;
+    this.indexes = new HashMap<>();
+
+    for (Map.Entry<String, IndexMapping> entry : template.indexes.entrySet()) {
+      indexes.put(entry.getKey(), entry.getValue().forKeyspace(keyspace));
+    }
+
+    this.cache = EntityCache.cacheFor(target, fields, budget);
+    this.partitionCache = PartitionCache.cacheFor(target);
+  }
+
+  /**
+   * A mapping of the same class to the same table in another keyspace.
+   */
+  Mapping<T> forKeyspace(String keyspace, CacheBudget budget) {
+    return new Mapping<>(this, keyspace, budget);
+  }
+
+  Class<T> getTarget() {
+    return target;
+  }
+
+  String getKeyspace() {
+    return keyspace;
+  }
+
+  String getTable() {
+    return table;
+  }
+
+  List<FieldMapping> getFields() {
+    return fields;
+  }
+
+  MonetaLoader<T> getLoader() {
+    return loader;
+  }
+
+  EntityCache<T> getCache() {
+    return cache;
+  }
+
+  PartitionCache<T> getPartitionCache() {
+    return partitionCache;
+  }
+
+  OperationOptions getOptions() {
+    return options;
+  }
+
+  HedgeStats getHedgeStats() {
+    return hedging.getStats();
+  }
+
+  long getHedgeThreshold(double percentile) {
+    return hedging.threshold(percentile);
+  }
+
+  /**
+   * The key of the entity, as passed to get.
+   */
+  Object keyOf(Object obj) {
+    return primaryKey.keyOf(obj);
+  }
+
+  KeyMapping getPrimaryKey() {
+    return primaryKey;
+  }
+
+  int getInFlightReads() {
+    return inFlightReads.get();
+  }
+
+  int getInFlightWrites() {
+    return inFlightWrites.get();
+  }
+
+  void invalidate(Object key) {
+    if (cache != null) {
+      cache.invalidate(key);
+    }
+
+    if (partitionCache != null) {
+      partitionCache.invalidate(partitionOf(key));
+    }
+  }
+
+  void invalidateAll() {
+    if (cache != null) {
+      cache.invalidateAll();
+    }
+
+    if (partitionCache != null) {
+      partitionCache.invalidateAll();
+    }
+  }
+
+  /**
+   * Releases the caches of a mapping that is no longer used.
+   */
+  void close() {
+    if (cache != null) {
+      cache.close();
+    }
+
+    if (partitionCache != null) {
+      partitionCache.invalidateAll();
+    }
+  }
+
+  /**
+   * Evicts the cached entities whose key starts with the range's prefix.
+   * Bounds are ignored, evicting a few more entities than needed.
+   */
+  void invalidate(KeyRange range) {
+    if (cache != null) {
+      List<Object> prefix = range.getPrefix();
+
+      for (Object key : cache.keys()) {
+        if (startsWith(key, prefix)) {
+          cache.invalidate(key);
+        }
+      }
+    }
+
+    if (partitionCache != null) {
+      partitionCache.invalidate(range.getPartition());
+    }
+  }
+
+  static boolean startsWith(Object key, List<Object> prefix) {
+    if (!(key instanceof CompositeKey))
+      return prefix.size() == 1 && prefix.get(0).equals(key);
+
+    CompositeKey composite = (CompositeKey) key;
+
+    if (composite.size() < prefix.size())
+      return false;
+
+    for (int i = 0; i < prefix.size(); ++i) {
+      if (!prefix.get(i).equals(composite.get(i)))
+        return false;
+    }
+
+    return true;
+  }
+
+  // The first primary key column, see KeyRange#getPartition
+  private static Object partitionOf(Object key) {
+    return key instanceof CompositeKey ? ((CompositeKey) key).get(0) : key;
   }
 
   private static String tableFor(Class<?> target) {
@@ -82,17 +328,208 @@ class Mapping<T> {
   }
 
   public ListenableFuture<T> get(Session session, final Object key) {
+    return get(session, key, null);
+  }
+
+  /**
+   * Loads the entity, with the given options overriding the entity's.
+   */
+  ListenableFuture<T> get(Session session, final Object key, OperationOptions overrides) {
+    return get(session, key, overrides, null);
+  }
+
+  private ListenableFuture<T> get(
+    final Session session, final Object key, OperationOptions overrides,
+    final ConcurrentMap<FieldMapping, LazyLoader> batch) {
+
     // Check the cache first
-    if (cache != null) {
-      T ret = cache.getIfPresent(key);
+    T cached = getCached(session, key);
 
-      if (ret != null) {
-        return Futures.immediateFuture(ret);
+    if (cached != null) {
+      return Futures.immediateFuture(cached);
+    }
+
+    return fetch(session, key, overrides, batch);
+  }
+
+  /**
+   * Reads the entity from Cassandra without looking in the cache, for
+   * callers that already missed it.
+   */
+  ListenableFuture<T> fetch(Session session, Object key, OperationOptions overrides) {
+    return fetch(session, key, overrides, null);
+  }
+
+  private ListenableFuture<T> fetch(
+    final Session session, final Object key, OperationOptions overrides,
+    final ConcurrentMap<FieldMapping, LazyLoader> batch) {
+
+    return Futures.transform(
+      execute(session, selectFor(key), options.merge(overrides), false, key),
+      new Function<ResultSet, T>() {
+        public T apply(ResultSet res) {
+          return load(session, key, res.one(), batch);
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Loads the entities for all of the keys concurrently, each one going
+   * through the cache. Keys without an entity are left out of the result.
+   */
+  ListenableFuture<Collection<T>> getAll(
+    Session session, Iterable<?> keys, OperationOptions overrides) {
+
+    List<ListenableFuture<T>> gets = new ArrayList<>();
+
+    // The lazy columns of the entities are read together
+    ConcurrentMap<FieldMapping, LazyLoader> batch = newLazyBatch();
+
+    for (Object key : keys) {
+      gets.add(get(session, key, overrides, batch));
+    }
+
+    return Futures.transform(
+      Futures.allAsList(gets),
+      new Function<List<T>, Collection<T>>() {
+        public Collection<T> apply(List<T> loaded) {
+          List<T> ret = new ArrayList<>(loaded.size());
+
+          for (T obj : loaded) {
+            if (obj != null) {
+              ret.add(obj);
+            }
+          }
+
+          return ret;
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Loads the entities of the range in clustering order, from the partition
+   * cache when the class has one.
+   */
+  ListenableFuture<List<T>> getRange(
+    final Session session, final KeyRange range, OperationOptions overrides) {
+
+    if (partitionCache != null) {
+      List<T> cached = partitionCache.get(range);
+
+      if (cached != null)
+        return Futures.immediateFuture(cached);
+    }
+
+    final long epoch = partitionCache == null ? 0 : partitionCache.epoch(range);
+
+    return Futures.transform(
+      execute(session, selectFor(range, false), options.merge(overrides), false, range),
+      new Function<ResultSet, List<T>>() {
+        public List<T> apply(ResultSet res) {
+          ConcurrentMap<FieldMapping, LazyLoader> batch = newLazyBatch();
+          List<T> ret = new ArrayList<>();
+
+          for (Row row : res) {
+            ret.add(decode(session, row, batch));
+          }
+
+          ret = Collections.unmodifiableList(ret);
+
+          if (partitionCache != null) {
+            partitionCache.put(range, ret, epoch);
+          }
+
+          return ret;
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Selects the entities of the range, or only their primary key columns.
+   */
+  private Select selectFor(KeyRange range, boolean keysOnly) {
+    List<FieldMapping> keyFields = primaryKey.getFields();
+    List<Object> prefix = range.getPrefix();
+
+    if (prefix.size() > keyFields.size())
+      throw new IllegalArgumentException("prefix is longer than the primary key; " +
+        "prefix=" + prefix);
+
+    if (range.isBounded() && prefix.size() == keyFields.size())
+      throw new IllegalArgumentException(
+        "bounded ranges need a primary key column after the prefix; prefix=" + prefix);
+
+    Select query;
+
+    if (keysOnly) {
+      Select.Selection selection = QueryBuilder.select();
+
+      for (FieldMapping field : keyFields) {
+        selection.column(field.getName());
       }
+
+      query = selection.from(keyspace, table);
+    }
+    else {
+      query = selectsAll ?
+        QueryBuilder.select().from(keyspace, table) :
+        selectColumns(QueryBuilder.select()).from(keyspace, table);
+    }
+
+    for (int i = 0; i < prefix.size(); ++i) {
+      query.where(eq(keyFields.get(i).getName(), prefix.get(i)));
     }
 
-    Select query = QueryBuilder.select()
-      .from(keyspace, table);
+    if (range.isBounded()) {
+      String column = keyFields.get(prefix.size()).getName();
+
+      if (range.getStart() != null) {
+        query.where(range.isStartInclusive() ?
+          gte(column, range.getStart()) : gt(column, range.getStart()));
+      }
+
+      if (range.getEnd() != null) {
+        query.where(range.isEndInclusive() ?
+          lte(column, range.getEnd()) : lt(column, range.getEnd()));
+      }
+    }
+
+    if (range.getLimit() > 0) {
+      query.limit(range.getLimit());
+    }
+
+    LOG.debug("get range; query={}", query);
+
+    return query;
+  }
+
+  /**
+   * Returns the cached entity for the key, or null if it is not cached.
+   * Starts a background reload when the entity is due for a refresh.
+   */
+  T getCached(Session session, Object key) {
+    if (cache == null)
+      return null;
+
+    EntityCache.Entry<T> entry = cache.getEntry(key);
+
+    if (entry == null)
+      return null;
+
+    if (cache.beginRefresh(key, entry)) {
+      refresh(session, key);
+    }
+
+    return entry.value;
+  }
+
+  private Select selectFor(Object key) {
+    Select query = selectsAll ?
+      QueryBuilder.select().from(keyspace, table) :
+      selectColumns(QueryBuilder.select()).from(keyspace, table);
 
     for (Clause clause : primaryKey.predicateForGet(key)) {
       query.where(clause);
@@ -100,40 +537,689 @@ class Mapping<T> {
 
     LOG.debug("get; query={}", query);
 
-    return Futures.transform(
-      session.executeAsync(query),
-      new Function<ResultSet, T>() {
-        public T apply(ResultSet res) {
-          return load(key, res.one());
+    return query;
+  }
+
+  /**
+   * Adds the columns the entity is loaded from to the selection, leaving
+   * out the lazy ones.
+   */
+  Select.Selection selectColumns(Select.Selection selection) {
+    for (FieldMapping field : fields) {
+      if (field.isLazy()) {
+        continue;
+      }
+
+      if (field.isMetadata()) {
+        FieldMapping.MetadataFieldMapping meta = (FieldMapping.MetadataFieldMapping) field;
+        selection.fcall(meta.getFunction(), QueryBuilder.column(meta.getColumn()));
+      }
+      else {
+        selection.column(field.getName());
+      }
+    }
+
+    return selection;
+  }
+
+  /**
+   * Reloads the entity through the async session path and swaps it into the
+   * cache once it arrives. The stale entity is served in the meantime. A
+   * write of the key while the reload is in flight wins over it.
+   */
+  private void refresh(final Session session, final Object key) {
+    LOG.debug("refreshing; key={}", key);
+
+    final long generation = cache.generation(key);
+
+    Futures.addCallback(
+      execute(session, selectFor(key), options, false, key),
+      new FutureCallback<ResultSet>() {
+        public void onSuccess(ResultSet res) {
+          try {
+            Row row = res.one();
+
+            if (row == null) {
+              cache.invalidate(key);
+            }
+            else {
+              cache.put(key, decode(session, row, null), generation);
+            }
+          }
+          finally {
+            cache.endRefresh(key);
+          }
         }
-      });
+
+        public void onFailure(Throwable t) {
+          LOG.warn("could not refresh; key={}; msg={}", key, t.getMessage(), t);
+          cache.endRefresh(key);
+        }
+      },
+      executor);
   }
 
-  T load(Object key, Row row) {
+  T load(
+    Session session, Object key, Row row, ConcurrentMap<FieldMapping, LazyLoader> batch) {
+
+    if (row == null)
+      return null;
+
     if (cache == null)
-      return loader.load(row);
+      return decode(session, row, batch);
 
     T ret = cache.getIfPresent(key);
 
     if (ret != null)
       return ret;
 
-    ret = loader.load(row);
+    ret = decode(session, row, batch);
     cache.put(key, ret);
     return ret;
   }
 
-  ListenableFuture<T> persist(Session session, T obj) {
-    // TODO: cache on persist
+  /**
+   * Loads the entity of the row and binds its lazy columns to the session.
+   * Entities sharing a batch have each lazy column read in one go.
+   */
+  T decode(Session session, Row row, ConcurrentMap<FieldMapping, LazyLoader> batch) {
+    T ret = loader.load(row);
+
+    if (lazyFields.isEmpty())
+      return ret;
+
+    Object key = primaryKey.keyOf(ret);
+
+    for (FieldMapping field : lazyFields) {
+      LazyColumn<?> handle = (LazyColumn<?>) field.get(ret);
+
+      if (handle == null || handle.isLoaded()) {
+        continue;
+      }
+
+      LazyLoader lazy = batch == null ? null : batch.get(field);
+
+      if (lazy == null) {
+        lazy = new LazyLoader(session, this, field);
+
+        if (batch != null) {
+          LazyLoader existing = batch.putIfAbsent(field, lazy);
+          lazy = existing == null ? lazy : existing;
+        }
+      }
+
+      lazy.add(handle, key);
+    }
+
+    return ret;
+  }
+
+  /**
+   * A batch for decode, or null when the entity has no lazy columns.
+   */
+  ConcurrentMap<FieldMapping, LazyLoader> newLazyBatch() {
+    return lazyFields.isEmpty() ? null : new ConcurrentHashMap<FieldMapping, LazyLoader>();
+  }
+
+  /**
+   * Reads the lazy column of the entities of the keys, by key. Entities
+   * with a single column key are read with IN queries.
+   */
+  ListenableFuture<Map<Object, Object>> readLazy(
+    Session session, final FieldMapping field, List<Object> keys) {
+
+    List<String> select = new ArrayList<>();
+
+    for (FieldMapping key : primaryKey.getFields()) {
+      select.add(key.getName());
+    }
+
+    select.add(field.getName());
+
+    List<ListenableFuture<ResultSet>> reads = new ArrayList<>();
+
+    if (primaryKey.getFields().size() == 1) {
+      String name = primaryKey.getFields().get(0).getName();
+
+      for (List<Object> chunk : Lists.partition(keys, LAZY_BATCH_SIZE)) {
+        Select query = QueryBuilder.select(select.toArray(new String[select.size()]))
+          .from(keyspace, table);
+
+        query.where(in(name, chunk.toArray()));
+
+        LOG.debug("loading lazy column; query={}", query);
+
+        reads.add(execute(session, query, options, false, chunk));
+      }
+    }
+    else {
+      // IN is restricted to the last key column, read the entities one by one
+      for (Object key : keys) {
+        Select query = QueryBuilder.select(select.toArray(new String[select.size()]))
+          .from(keyspace, table);
+
+        for (Clause clause : primaryKey.predicateForGet(key)) {
+          query.where(clause);
+        }
+
+        LOG.debug("loading lazy column; query={}", query);
+
+        reads.add(execute(session, query, options, false, key));
+      }
+    }
+
+    return Futures.transform(
+      Futures.allAsList(reads),
+      new Function<List<ResultSet>, Map<Object, Object>>() {
+        public Map<Object, Object> apply(List<ResultSet> results) {
+          Map<Object, Object> ret = new HashMap<>();
+
+          for (ResultSet res : results) {
+            for (Row row : res) {
+              ret.put(primaryKey.keyOf(row),
+                ((FieldMapping.LazyFieldMapping) field).castValue(row));
+            }
+          }
+
+          return ret;
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Loads the entity of the key through the lookup table of the index.
+   */
+  ListenableFuture<T> getBy(
+    final Session session, String column, Object value, OperationOptions overrides) {
+    IndexMapping index = indexes.get(column);
+
+    if (index == null)
+      throw new IllegalArgumentException("column is not indexed; column=" + column);
+
+    Select query = index.selectFor(value);
+
+    final OperationOptions opts = options.merge(overrides);
+
+    LOG.debug("getBy; query={}", query);
+
+    return Futures.transform(
+      execute(session, query, opts, false, column + "=" + value),
+      new AsyncFunction<ResultSet, T>() {
+        public ListenableFuture<T> apply(ResultSet res) {
+          Row row = res.one();
+
+          if (row == null)
+            return Futures.immediateFuture(null);
+
+          return get(session, primaryKey.keyOf(row), opts);
+        }
+      },
+      executor);
+  }
+
+  ListenableFuture<T> persist(final Session session, final T obj) {
+    return persist(session, obj, null);
+  }
+
+  ListenableFuture<T> persist(
+    final Session session, final T obj, OperationOptions overrides) {
+
+    final OperationOptions opts = options.merge(overrides);
+    final Object key = primaryKey.keyOf(obj);
+    final Insert query = insertFor(obj, opts);
+
+    if (indexes.isEmpty()) {
+      LOG.debug("persisting; query={}", query);
+      return write(session, key, query, obj, opts);
+    }
+
+    // The lookup rows of the values being replaced are removed in the same
+    // batch as the write
+    return Futures.transform(
+      previous(session, key, opts),
+      new AsyncFunction<Row, T>() {
+        public ListenableFuture<T> apply(Row prev) {
+          List<Statement> batch = new ArrayList<>();
+          batch.add(query);
+
+          for (IndexMapping index : indexes.values()) {
+            Object before = prev == null ? null : index.getField().cast(prev);
+            Object after = index.getField().get(obj);
+
+            if (before != null && !before.equals(after)) {
+              Delete delete = index.deleteFor(before, key);
+              opts.applyTo(delete);
+              batch.add(delete);
+            }
+
+            // Lookup rows expire with the entity
+            if (after != null) {
+              Insert insert = index.insertFor(after, obj);
+              opts.applyTo(insert);
+              batch.add(insert);
+            }
+          }
+
+          Batch writes = QueryBuilder.batch(batch.toArray(new Statement[batch.size()]));
+
+          LOG.debug("persisting; query={}", writes);
+
+          return write(session, key, writes, obj, opts);
+        }
+      },
+      executor);
+  }
+
+  /**
+   * The write of the entity's row, without its lookup rows.
+   */
+  Insert insertFor(T obj, OperationOptions opts) {
     Insert query = QueryBuilder.insertInto(keyspace, table);
 
     for (FieldMapping field : fields) {
-      query.value(field.getName(), field.get(obj));
+      // Lazy columns that were never read are left as they are
+      if (field.hasValue(obj)) {
+        query.value(field.getName(), field.toColumn(obj));
+      }
+    }
+
+    opts.applyTo(query);
+    return query;
+  }
+
+  ListenableFuture<Void> delete(
+    final Session session, final Object key, OperationOptions overrides) {
+
+    final OperationOptions opts = options.merge(overrides);
+    final Delete query = deleteFor(key);
+
+    opts.applyTo(query);
+
+    if (indexes.isEmpty()) {
+      LOG.debug("deleting; query={}", query);
+      return write(session, key, query, null, opts);
+    }
+
+    return Futures.transform(
+      previous(session, key, opts),
+      new AsyncFunction<Row, Void>() {
+        public ListenableFuture<Void> apply(Row prev) {
+          List<Statement> batch = new ArrayList<>();
+          batch.add(query);
+
+          for (IndexMapping index : indexes.values()) {
+            Object before = prev == null ? null : index.getField().cast(prev);
+
+            if (before != null) {
+              Delete delete = index.deleteFor(before, key);
+              opts.applyTo(delete);
+              batch.add(delete);
+            }
+          }
+
+          Batch writes = QueryBuilder.batch(batch.toArray(new Statement[batch.size()]));
+
+          LOG.debug("deleting; query={}", writes);
+
+          return write(session, key, writes, null, opts);
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Deletes the entities of the range. A range without bounds or limit is
+   * removed with a single tombstone covering its prefix. Cassandra cannot
+   * delete by bounds, so the keys of a bounded range are read first and
+   * deleted with row tombstones, in batches of at most DELETE_BATCH_SIZE
+   * rows.
+   *
+   * The lookup rows of indexed classes are deleted in the batch of their
+   * entity, from the entities read beforehand. Entities written while
+   * those are read may be left out of the lookup deletes.
+   */
+  ListenableFuture<Void> deleteRange(
+    final Session session, final KeyRange range, OperationOptions overrides) {
+
+    final OperationOptions opts = options.merge(overrides);
+    final boolean wholePrefix = !range.isBounded() && range.getLimit() == 0;
+
+    if (wholePrefix && indexes.isEmpty()) {
+      Delete query = deleteFor(range);
+      opts.applyTo(query);
+
+      LOG.debug("deleting range; query={}", query);
+
+      return writeRange(session, range, query, opts);
+    }
+
+    return Futures.transform(
+      execute(session, selectFor(range, indexes.isEmpty()), opts, false, range),
+      new AsyncFunction<ResultSet, Void>() {
+        public ListenableFuture<Void> apply(ResultSet res) {
+          // The deletes of each row, the row tombstone and its lookup rows
+          List<List<Statement>> rows = new ArrayList<>();
+
+          for (Row row : res) {
+            Object key = primaryKey.keyOf(row);
+            List<Statement> deletes = new ArrayList<>();
+
+            if (!wholePrefix) {
+              deletes.add(deleteFor(key));
+            }
+
+            for (IndexMapping index : indexes.values()) {
+              Object before = index.getField().cast(row);
+
+              if (before != null) {
+                deletes.add(index.deleteFor(before, key));
+              }
+            }
+
+            if (!deletes.isEmpty()) {
+              rows.add(deletes);
+            }
+          }
+
+          List<ListenableFuture<Void>> writes = new ArrayList<>();
+
+          for (List<List<Statement>> chunk : Lists.partition(rows, DELETE_BATCH_SIZE)) {
+            List<Statement> batch = new ArrayList<>();
+
+            for (List<Statement> deletes : chunk) {
+              batch.addAll(deletes);
+            }
+
+            writes.add(writeBatch(session, range, batch, opts));
+          }
+
+          // Sent on its own, alongside the lookup deletes of its rows
+          if (wholePrefix) {
+            writes.add(writeBatch(
+              session, range, Arrays.<Statement>asList(deleteFor(range)), opts));
+          }
+
+          return Futures.transform(
+            Futures.allAsList(writes),
+            new Function<List<Void>, Void>() {
+              public Void apply(List<Void> res) {
+                return null;
+              }
+            });
+        }
+      },
+      executor);
+  }
+
+  private ListenableFuture<Void> writeBatch(
+    Session session, KeyRange range, List<Statement> batch, OperationOptions opts) {
+
+    for (Statement statement : batch) {
+      opts.applyTo((Delete) statement);
+    }
+
+    if (batch.size() == 1) {
+      LOG.debug("deleting range; query={}", batch.get(0));
+      return writeRange(session, range, batch.get(0), opts);
     }
 
-    LOG.debug("persisting; query={}", query);
+    Statement[] statements = batch.toArray(new Statement[batch.size()]);
 
-    return Futures.transform(session.executeAsync(query), Functions.constant(obj));
+    // The batch only spans partitions when it holds lookup rows
+    Batch writes = indexes.isEmpty() ?
+      QueryBuilder.unloggedBatch(statements) :
+      QueryBuilder.batch(statements);
+
+    LOG.debug("deleting range; query={}", writes);
+
+    return writeRange(session, range, writes, opts);
+  }
+
+  /**
+   * Deletes the entities of the keys with batches of at most
+   * DELETE_BATCH_SIZE keys of a single partition, so that each batch is
+   * applied by a single replica set. Indexed classes have their keys
+   * deleted one at a time, along with their lookup rows.
+   */
+  ListenableFuture<Void> deleteAll(
+    Session session, Iterable<?> keys, OperationOptions overrides) {
+
+    OperationOptions opts = options.merge(overrides);
+    List<ListenableFuture<Void>> deletes = new ArrayList<>();
+
+    if (!indexes.isEmpty()) {
+      for (Object key : keys) {
+        deletes.add(delete(session, key, overrides));
+      }
+    }
+    else {
+      Map<Object, List<Object>> partitions = new LinkedHashMap<>();
+
+      for (Object key : keys) {
+        Object partition = partitionOf(key);
+        List<Object> group = partitions.get(partition);
+
+        if (group == null) {
+          group = new ArrayList<>();
+          partitions.put(partition, group);
+        }
+
+        group.add(key);
+      }
+
+      for (Map.Entry<Object, List<Object>> partition : partitions.entrySet()) {
+        for (List<Object> chunk : Lists.partition(partition.getValue(), DELETE_BATCH_SIZE)) {
+          deletes.add(deleteAll(session, partition.getKey(), chunk, opts));
+        }
+      }
+    }
+
+    return Futures.transform(
+      Futures.allAsList(deletes),
+      new Function<List<Void>, Void>() {
+        public Void apply(List<Void> res) {
+          return null;
+        }
+      });
+  }
+
+  private ListenableFuture<Void> deleteAll(
+    Session session, Object partition, final List<Object> keys, OperationOptions opts) {
+
+    Statement[] batch = new Statement[keys.size()];
+
+    for (int i = 0; i < batch.length; ++i) {
+      Delete delete = deleteFor(keys.get(i));
+      opts.applyTo(delete);
+      batch[i] = delete;
+    }
+
+    Statement query = batch.length == 1 ? batch[0] : QueryBuilder.unloggedBatch(batch);
+
+    LOG.debug("deleting; query={}", query);
+
+    return Futures.transform(
+      execute(session, query, opts, true, partition),
+      new Function<ResultSet, Void>() {
+        public Void apply(ResultSet res) {
+          for (Object key : keys) {
+            invalidate(key);
+          }
+
+          return null;
+        }
+      },
+      executor);
+  }
+
+  private Delete deleteFor(Object key) {
+    Delete query = QueryBuilder.delete().from(keyspace, table);
+
+    for (Clause clause : primaryKey.predicateForGet(key)) {
+      query.where(clause);
+    }
+
+    return query;
+  }
+
+  private Delete deleteFor(KeyRange range) {
+    List<FieldMapping> keyFields = primaryKey.getFields();
+    List<Object> prefix = range.getPrefix();
+
+    if (prefix.size() > keyFields.size())
+      throw new IllegalArgumentException("prefix is longer than the primary key; " +
+        "prefix=" + prefix);
+
+    Delete query = QueryBuilder.delete().from(keyspace, table);
+
+    for (int i = 0; i < prefix.size(); ++i) {
+      query.where(eq(keyFields.get(i).getName(), prefix.get(i)));
+    }
+
+    return query;
+  }
+
+  /**
+   * Runs the write and evicts the cached entities of the range, and the
+   * results of its partition, once it succeeded.
+   */
+  private ListenableFuture<Void> writeRange(
+    Session session, final KeyRange range, Statement query, OperationOptions opts) {
+
+    return Futures.transform(
+      execute(session, query, opts, true, range),
+      new Function<ResultSet, Void>() {
+        public Void apply(ResultSet res) {
+          invalidate(range);
+          return null;
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Runs the write and evicts the key, and the results of its partition,
+   * from the caches once it succeeded, so that the next get, and the next
+   * index update, sees the new state.
+   */
+  private <X> ListenableFuture<X> write(
+    Session session, final Object key, Statement query, final X ret,
+    OperationOptions opts) {
+
+    return Futures.transform(
+      execute(session, query, opts, true, key),
+      new Function<ResultSet, X>() {
+        public X apply(ResultSet res) {
+          invalidate(key);
+          return ret;
+        }
+      },
+      executor);
+  }
+
+  /**
+   * The indexed columns currently stored for the key. They are always read
+   * from Cassandra: cached entities are shared, the caller may well be
+   * persisting the very instance the cache holds.
+   */
+  private ListenableFuture<Row> previous(
+    Session session, Object key, OperationOptions opts) {
+
+    Select.Selection selection = QueryBuilder.select();
+
+    for (IndexMapping index : indexes.values()) {
+      selection.column(index.getField().getName());
+    }
+
+    Select query = selection.from(keyspace, table);
+
+    for (Clause clause : primaryKey.predicateForGet(key)) {
+      query.where(clause);
+    }
+
+    return Futures.transform(
+      execute(session, query, opts, false, key),
+      new Function<ResultSet, Row>() {
+        public Row apply(ResultSet res) {
+          return res.one();
+        }
+      },
+      executor);
+  }
+
+  /**
+   * Runs the statement with the options' consistency and retry policy,
+   * failing it once the options' timeout elapses. Reads are hedged when
+   * the options ask for it.
+   */
+  private ListenableFuture<ResultSet> execute(
+    Session session, Query query, OperationOptions opts, boolean write, Object key) {
+
+    opts.applyTo(query, write);
+
+    SlowQueryLog.Watch watch = slowLog == null ? null : slowLog.watch(target, key, query);
+
+    ListenableFuture<ResultSet> ret = !write && opts.isHedging() ?
+      hedging.execute(session, query, opts) :
+      session.executeAsync(query);
+
+    final AtomicInteger inFlight = write ? inFlightWrites : inFlightReads;
+    inFlight.incrementAndGet();
+
+    ret.addListener(new Runnable() {
+      public void run() {
+        inFlight.decrementAndGet();
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    if (watch != null) {
+      watch.on(ret);
+    }
+
+    // Cancelling a driver future completes it without aborting the
+    // statement, so it is shielded to stay counted in flight until
+    // Cassandra answers. A hedged read goes on too, second attempt included.
+    return Timeouts.within(Timeouts.shielded(ret), opts.timeout(write));
+  }
+
+  private static Map<String, IndexMapping> indexMappingsFor(
+    Class<?> target, String keyspace, String table,
+    List<FieldMapping> fields, KeyMapping primaryKey) {
+
+    Map<String, IndexMapping> ret = new HashMap<>();
+
+    for (Field field : target.getDeclaredFields()) {
+      Index index = field.getAnnotation(Index.class);
+
+      if (index == null) {
+        continue;
+      }
+
+      Column col = field.getAnnotation(Column.class);
+
+      if (col == null)
+        throw new IllegalArgumentException(
+          "@Index is only supported on @Column fields; field=" + field.getName());
+
+      if (field.getAnnotation(Lazy.class) != null)
+        throw new IllegalArgumentException(
+          "@Index is not supported on @Lazy fields; field=" + field.getName());
+
+      String name = col.value().equals("-") ? field.getName() : col.value();
+
+      for (FieldMapping mapping : fields) {
+        if (mapping.getName().equals(name)) {
+          ret.put(name, new IndexMapping(
+            keyspace,
+            index.value().equals("-") ? table + "_by_" + name : index.value(),
+            mapping,
+            primaryKey));
+        }
+      }
+    }
+
+    return ret;
   }
 
   private static List<FieldMapping> fieldMappingsFor(Class<?> target)
@@ -144,14 +1230,22 @@ class Mapping<T> {
     for (Field field : target.getDeclaredFields()) {
       PrimaryKey pk = field.getAnnotation(PrimaryKey.class);
       Column col = field.getAnnotation(Column.class);
+      Ttl ttl = field.getAnnotation(Ttl.class);
+      WriteTime writeTime = field.getAnnotation(WriteTime.class);
 
-      if (pk == null && col == null) {
+      if (pk == null && col == null && ttl == null && writeTime == null) {
         continue;
       }
 
       FieldMapping mapping;
 
-      if (pk != null) {
+      if (ttl != null) {
+        mapping = FieldMapping.build("ttl", ttl.value(), field);
+      }
+      else if (writeTime != null) {
+        mapping = FieldMapping.build("writetime", writeTime.value(), field);
+      }
+      else if (pk != null) {
         mapping = FieldMapping.build(pk.value(), true, field);
       }
       else {
@@ -163,16 +1257,4 @@ class Mapping<T> {
 
     return ret;
   }
-
-  private static <X> Cache<Object, X> cacheFor(Class<X> target) {
-    Cached cached = target.getAnnotation(Cached.class);
-
-    if (cached == null)
-      return null;
-
-    return CacheBuilder.newBuilder()
-      .maximumSize(1000)
-      .expireAfterAccess(10, TimeUnit.MINUTES)
-      .build();
-  }
 }
\ No newline at end of file
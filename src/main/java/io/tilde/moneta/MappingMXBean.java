@@ -0,0 +1,63 @@
+package io.tilde.moneta;
+
+/**
+ * Management interface of the mapping of an entity class, registered as
+ * `io.tilde.moneta:type=Mapping,mapper=<name>,entity=<class>`.
+ *
+ * The cache attributes are zero for classes that are not @Cached.
+ *
+ * @author Carl Lerche
+ */
+public interface MappingMXBean {
+
+  String getEntityClass();
+
+  String getKeyspace();
+
+  String getTable();
+
+  String[] getColumns();
+
+  String[] getPrimaryKey();
+
+  boolean isCached();
+
+  long getCacheSize();
+
+  /**
+   * The maximum number of cached entities, or -1 when the caches are
+   * bounded by the mapper's cache budget.
+   */
+  long getCacheMaximumSize();
+
+  long getCacheRequests();
+
+  long getCacheHits();
+
+  double getCacheHitRate();
+
+  /**
+   * Estimated bytes held by the cache, zero without a cache budget.
+   */
+  long getCachedBytes();
+
+  /**
+   * Reads sent to Cassandra that have not completed yet.
+   */
+  int getInFlightReads();
+
+  int getInFlightWrites();
+
+  /**
+   * Evicts the entity from the cache. The key is written the way it is
+   * printed, with the components of composite keys separated by commas.
+   */
+  void invalidate(String key);
+
+  void clearCache();
+
+  /**
+   * Changes the maximum number of cached entities. The cache is emptied.
+   */
+  void resizeCache(long maximumSize);
+}
@@ -1,6 +1,22 @@
 package io.tilde.moneta;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.policies.DCAwareRoundRobinPolicy;
+import com.datastax.driver.core.policies.LoadBalancingPolicy;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Configures and builds an instance of MonetaMapper.
@@ -11,8 +27,59 @@ public class MonetaConfig {
 
   private Cluster cluster;
 
+  private final List<String> contactPoints = new ArrayList<>();
+
+  // Negative settings are left to the profile, or to the driver
+  private int port = -1;
+
+  private ConnectionProfile profile;
+
+  private ProtocolOptions.Compression protocolCompression;
+
+  private int coreConnections = -1;
+
+  private int maxConnections = -1;
+
+  private int minRequests = -1;
+
+  private int maxRequests = -1;
+
+  private LoadBalancingPolicy loadBalancingPolicy;
+
+  private String localDatacenter;
+
   private String keyspace;
 
+  private Executor executor = MoreExecutors.sameThreadExecutor();
+
+  private Path snapshotPath;
+
+  private int snapshotSize = 1000;
+
+  private long snapshotInterval = 0;
+
+  private long snapshotMaxAge = TimeUnit.HOURS.toMillis(1);
+
+  private OperationOptions defaultOptions = OperationOptions.NONE;
+
+  private final Map<Class<?>, OperationOptions> classOptions = new HashMap<>();
+
+  private long slowQueryThreshold = -1;
+
+  private double tracingSample = 0;
+
+  private long cacheBudget = -1;
+
+  private long viewCacheBudget = 64L * 1024 * 1024;
+
+  private boolean jmx = false;
+
+  private long deadline = 0;
+
+  /**
+   * Connects through the given cluster, the connection settings of this
+   * config are then ignored.
+   */
   public MonetaConfig withCluster(Cluster cluster) {
     this.cluster = cluster;
     return this;
@@ -23,16 +90,360 @@ public class MonetaConfig {
     return this;
   }
 
+  /**
+   * The addresses of the nodes to discover the cluster from, defaults to
+   * 127.0.0.1.
+   */
+  public MonetaConfig withContactPoints(String... addresses) {
+    contactPoints.addAll(Arrays.asList(addresses));
+    return this;
+  }
+
+  /**
+   * The native protocol port of the nodes, defaults to 9042.
+   */
+  public MonetaConfig withPort(int port) {
+    this.port = port;
+    return this;
+  }
+
+  /**
+   * Presets of compression, pooling and load balancing, see
+   * ConnectionProfile. Without a profile the driver's defaults are used.
+   */
+  public MonetaConfig withProfile(ConnectionProfile profile) {
+    this.profile = profile;
+    return this;
+  }
+
+  /**
+   * Compresses the frames exchanged with the nodes. Saves bandwidth on
+   * large rows and batches at the cost of CPU on both ends.
+   */
+  public MonetaConfig withProtocolCompression(ProtocolOptions.Compression compression) {
+    protocolCompression = compression;
+    return this;
+  }
+
+  /**
+   * The connections kept open to each node of the local datacenter, and
+   * the most that are opened under load.
+   */
+  public MonetaConfig withConnectionsPerHost(int core, int max) {
+    if (core < 1 || max < core)
+      throw new IllegalArgumentException(
+        "expected 1 <= core <= max connections; core=" + core + "; max=" + max);
+
+    coreConnections = core;
+    maxConnections = max;
+    return this;
+  }
+
+  /**
+   * Another connection to a node is opened once all of its connections
+   * have more than `max` requests in flight, and connections are closed
+   * once they drop below `min`.
+   */
+  public MonetaConfig withSimultaneousRequestsThresholds(int min, int max) {
+    if (min < 0 || max <= min)
+      throw new IllegalArgumentException(
+        "expected 0 <= min < max requests; min=" + min + "; max=" + max);
+
+    minRequests = min;
+    maxRequests = max;
+    return this;
+  }
+
+  /**
+   * Chooses the coordinators of the statements, taking precedence over
+   * withLocalDatacenter. The policy is stateful, it can't be shared
+   * between mappers.
+   */
+  public MonetaConfig withLoadBalancingPolicy(LoadBalancingPolicy policy) {
+    loadBalancingPolicy = policy;
+    return this;
+  }
+
+  /**
+   * Sends statements to the nodes of the given datacenter, the others are
+   * only used when it is down.
+   */
+  public MonetaConfig withLocalDatacenter(String name) {
+    localDatacenter = name;
+    return this;
+  }
+
+  /**
+   * Runs row decoding, cache insertion and future callbacks of every
+   * operation on the given executor instead of the driver's I/O threads,
+   * so that slow decodes of large rows do not stall other requests.
+   */
+  public MonetaConfig withExecutor(Executor executor) {
+    this.executor = executor;
+    return this;
+  }
+
+  /**
+   * Decodes rows directly on the driver's I/O threads. This is the default
+   * and is the cheapest option when rows are small.
+   */
+  public MonetaConfig withSameThreadExecutor() {
+    return withExecutor(MoreExecutors.sameThreadExecutor());
+  }
+
+  /**
+   * Saves the hottest keys of every @Cached entity to the given file when
+   * the mapper is closed, and warms the caches back up from it in the
+   * background on connect.
+   */
+  public MonetaConfig withCacheSnapshot(Path path) {
+    snapshotPath = path;
+    return this;
+  }
+
+  public MonetaConfig withCacheSnapshot(String path) {
+    return withCacheSnapshot(Paths.get(path));
+  }
+
+  /**
+   * The number of keys saved per entity class, defaults to 1000.
+   */
+  public MonetaConfig withCacheSnapshotSize(int keys) {
+    snapshotSize = keys;
+    return this;
+  }
+
+  /**
+   * Also saves the snapshot periodically, so that a crash does not lose it.
+   */
+  public MonetaConfig withCacheSnapshotInterval(long duration, TimeUnit unit) {
+    snapshotInterval = unit.toMillis(duration);
+    return this;
+  }
+
+  /**
+   * Keys that were loaded longer ago than this are not restored. Defaults
+   * to one hour.
+   */
+  public MonetaConfig withCacheSnapshotMaxAge(long duration, TimeUnit unit) {
+    snapshotMaxAge = unit.toMillis(duration);
+    return this;
+  }
+
+  /**
+   * Consistency levels, timeouts and retry policy of the statements of
+   * every entity, unless set by the entity's @Table or withOptions.
+   */
+  public MonetaConfig withDefaultOptions(OperationOptions options) {
+    defaultOptions = options;
+    return this;
+  }
+
+  /**
+   * Options of the statements of the given entity class, taking precedence
+   * over its @Table annotation.
+   */
+  public MonetaConfig withOptions(Class<?> klass, OperationOptions options) {
+    classOptions.put(klass, options);
+    return this;
+  }
+
+  /**
+   * Logs the statements that take longer than the threshold, at WARN
+   * level under the io.tilde.moneta.SlowQueryLog logger.
+   */
+  public MonetaConfig withSlowQueryLog(long threshold, TimeUnit unit) {
+    slowQueryThreshold = unit.toMillis(threshold);
+    return this;
+  }
+
+  /**
+   * Sends the given fraction of the statements, between 0 and 1, with
+   * query tracing enabled and logs them with their trace events. Tracing
+   * adds load to the cluster, so keep the fraction small.
+   */
+  public MonetaConfig withTracingSample(double fraction) {
+    tracingSample = fraction;
+    return this;
+  }
+
+  /**
+   * Bounds the entity caches of every @Cached class together by their
+   * estimated size in bytes, instead of each by its maximum size. Entries
+   * are evicted from the caches with the lowest hit rates first.
+   */
+  public MonetaConfig withCacheBudget(long bytes) {
+    if (bytes <= 0)
+      throw new IllegalArgumentException("cache budget must be positive");
+
+    cacheBudget = bytes;
+    return this;
+  }
+
+  /**
+   * Bounds the entity caches of all the keyspace views of the mapper
+   * together, when no cache budget is configured, see
+   * MonetaMapper.forKeyspace. Defaults to 64MB.
+   */
+  public MonetaConfig withViewCacheBudget(long bytes) {
+    if (bytes <= 0)
+      throw new IllegalArgumentException("view cache budget must be positive");
+
+    viewCacheBudget = bytes;
+    return this;
+  }
+
+  /**
+   * Fails every operation of the mapper that does not complete within the
+   * duration with an OperationTimeoutException. Statements already sent
+   * are not aborted, they run until Cassandra answers. Unlike the
+   * statement timeouts of OperationOptions, the deadline covers the whole
+   * operation, such as the read an indexed persist starts with. Scans and
+   * bulk imports are not bounded.
+   */
+  public MonetaConfig withDeadline(long duration, TimeUnit unit) {
+    if (duration <= 0)
+      throw new IllegalArgumentException("deadline must be positive");
+
+    deadline = unit.toMillis(duration);
+    return this;
+  }
+
+  /**
+   * Registers MBeans for the mapper and each of its entity classes, with
+   * cache statistics and operations to invalidate or resize the caches.
+   * The MBeans keep the mapper reachable until it is closed. Disabled by
+   * default.
+   */
+  public MonetaConfig withJmx(boolean enabled) {
+    jmx = enabled;
+    return this;
+  }
+
   public MonetaMapper connect() {
-    return new MonetaMapper(getOrBuildCluster().connect(), keyspace);
+    return new MonetaMapper(getOrBuildCluster().connect(), this);
+  }
+
+  String getKeyspace() {
+    return keyspace;
+  }
+
+  Executor getExecutor() {
+    return executor;
+  }
+
+  OperationOptions getDefaultOptions() {
+    return defaultOptions;
+  }
+
+  Map<Class<?>, OperationOptions> getClassOptions() {
+    return classOptions;
+  }
+
+  SlowQueryLog getSlowQueryLog() {
+    if (slowQueryThreshold < 0 && tracingSample <= 0)
+      return null;
+
+    return new SlowQueryLog(
+      slowQueryThreshold < 0 ? Long.MAX_VALUE : slowQueryThreshold, tracingSample);
+  }
+
+  CacheBudget getCacheBudget() {
+    return cacheBudget < 0 ? null : new CacheBudget(cacheBudget);
+  }
+
+  long getViewCacheBudget() {
+    return viewCacheBudget;
+  }
+
+  long getDeadline() {
+    return deadline;
+  }
+
+  boolean isJmxEnabled() {
+    return jmx;
+  }
+
+  CacheSnapshot getCacheSnapshot() {
+    if (snapshotPath == null)
+      return null;
+
+    return new CacheSnapshot(snapshotPath, snapshotSize, snapshotMaxAge);
+  }
+
+  long getCacheSnapshotInterval() {
+    return snapshotInterval;
   }
 
   private Cluster getOrBuildCluster() {
     if (cluster == null) {
-      cluster = Cluster.builder()
-        .addContactPoint("127.0.0.1").build();
+      cluster = clusterBuilder().build();
     }
 
     return cluster;
   }
+
+  Cluster.Builder clusterBuilder() {
+    Cluster.Builder ret = Cluster.builder();
+
+    if (contactPoints.isEmpty()) {
+      ret.addContactPoint("127.0.0.1");
+    }
+    else {
+      ret.addContactPoints(contactPoints.toArray(new String[contactPoints.size()]));
+    }
+
+    if (port > 0) {
+      ret.withPort(port);
+    }
+
+    if (protocolCompression != null) {
+      ret.withCompression(protocolCompression);
+    }
+    else if (profile != null) {
+      ret.withCompression(profile.compression);
+    }
+
+    if (loadBalancingPolicy != null) {
+      ret.withLoadBalancingPolicy(loadBalancingPolicy);
+    }
+    else if (localDatacenter != null) {
+      ret.withLoadBalancingPolicy(new DCAwareRoundRobinPolicy(localDatacenter));
+    }
+
+    PoolingOptions pooling = ret.poolingOptions();
+
+    int core = setting(coreConnections, profile == null ? -1 : profile.coreConnections);
+    int max = setting(maxConnections, profile == null ? -1 : profile.maxConnections);
+
+    if (core > 0) {
+      pooling.setCoreConnectionsPerHost(HostDistance.LOCAL, core);
+    }
+
+    if (max > 0) {
+      pooling.setMaxConnectionsPerHost(HostDistance.LOCAL, Math.max(core, max));
+    }
+
+    int min = setting(minRequests, profile == null ? -1 : profile.minRequests);
+    int maxInFlight = setting(maxRequests, profile == null ? -1 : profile.maxRequests);
+
+    if (min >= 0) {
+      pooling.setMinSimultaneousRequestsPerConnectionThreshold(HostDistance.LOCAL, min);
+    }
+
+    if (maxInFlight > 0) {
+      pooling.setMaxSimultaneousRequestsPerConnectionThreshold(
+        HostDistance.LOCAL, Math.max(min + 1, maxInFlight));
+    }
+
+    if (profile != null && profile.tcpNoDelay) {
+      ret.socketOptions().setTcpNoDelay(true);
+    }
+
+    return ret;
+  }
+
+  private static int setting(int explicit, int preset) {
+    return explicit >= 0 ? explicit : preset;
+  }
 }
\ No newline at end of file
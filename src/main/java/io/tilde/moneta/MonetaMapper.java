@@ -2,15 +2,29 @@ package io.tilde.moneta;
 
 import com.datastax.driver.core.Session;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
- * Configures and builds an instance of MonetaMapper.
+ * Maps entities to Cassandra tables. Every operation has a variant that
+ * takes OperationOptions for that call, except the varargs partition
+ * helpers, which are shorthands for the KeyRange.of variants.
  *
  * @author Carl Lerche
  */
@@ -21,11 +35,109 @@ public class MonetaMapper {
 
   private final String keyspace;
 
-  private Map<Class<?>, Mapping> mappings = ImmutableMap.of();
+  private final Executor executor;
+
+  private final OperationOptions defaultOptions;
+
+  private final Map<Class<?>, OperationOptions> classOptions;
+
+  private final SlowQueryLog slowLog;
+
+  // Null unless the caches share a memory budget
+  private final CacheBudget cacheBudget;
+
+  // Shared by the caches of the views, null for views
+  private final CacheBudget viewBudget;
+
+  private final CacheSnapshot snapshot;
+
+  // Null when JMX is disabled
+  private final MBeans mbeans;
+
+  private final ScheduledExecutorService background;
+
+  private final Future<?> restoring;
+
+  // Millis, zero when operations have no deadline
+  private final long deadline;
+
+  // Null unless this mapper is a view of another one's entities in
+  // another keyspace
+  private final MonetaMapper parent;
+
+  private final ConcurrentMap<String, MonetaMapper> views = new ConcurrentHashMap<>();
+
+  // Set once a view is closed, guarded by the view's lock
+  private boolean closed;
+
+  private Map<Class<?>, Mapping<?>> mappings = ImmutableMap.of();
 
   MonetaMapper(Session session, String keyspace) {
+    this(session, new MonetaConfig().withKeyspace(keyspace));
+  }
+
+  MonetaMapper(Session session, MonetaConfig config) {
+    this.parent = null;
     this.session = session;
+    this.keyspace = config.getKeyspace();
+    this.executor = config.getExecutor();
+    this.defaultOptions = config.getDefaultOptions();
+    this.classOptions = ImmutableMap.copyOf(config.getClassOptions());
+    this.slowLog = config.getSlowQueryLog();
+    this.cacheBudget = config.getCacheBudget();
+    this.viewBudget = cacheBudget != null ?
+      cacheBudget :
+      new CacheBudget(config.getViewCacheBudget());
+    this.deadline = config.getDeadline();
+    this.snapshot = config.getCacheSnapshot();
+    this.mbeans = config.isJmxEnabled() ? new MBeans(this, keyspace) : null;
+
+    if (snapshot == null) {
+      this.background = null;
+      this.restoring = null;
+      return;
+    }
+
+    this.background = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("moneta-snapshot-%d")
+        .build());
+
+    this.restoring = background.submit(new Runnable() {
+      public void run() {
+        restoreSnapshot();
+      }
+    });
+
+    long snapshotInterval = config.getCacheSnapshotInterval();
+
+    if (snapshotInterval > 0) {
+      background.scheduleWithFixedDelay(new Runnable() {
+        public void run() {
+          saveSnapshot();
+        }
+      }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private MonetaMapper(MonetaMapper parent, String keyspace) {
+    this.parent = parent;
+    this.session = parent.session;
     this.keyspace = keyspace;
+    this.executor = parent.executor;
+    this.defaultOptions = parent.defaultOptions;
+    this.classOptions = parent.classOptions;
+    this.slowLog = parent.slowLog;
+    this.cacheBudget = parent.viewBudget;
+    this.viewBudget = null;
+    this.deadline = parent.deadline;
+    this.mbeans = parent.mbeans;
+
+    // Snapshots only cover the keyspace the mapper was configured with
+    this.snapshot = null;
+    this.background = null;
+    this.restoring = null;
   }
 
   public static MonetaConfig configure() {
@@ -33,99 +145,569 @@ public class MonetaMapper {
   }
 
   public void close() {
+    if (parent != null) {
+      parent.closeView(this);
+      return;
+    }
+
+    if (snapshot != null) {
+      background.shutdownNow();
+      saveSnapshot();
+    }
+
+    if (mbeans != null) {
+      mbeans.close();
+    }
+
     // session.shutdown();
   }
 
-  public Session getSession() {
-    return session;
+  /**
+   * Blocks until the cache snapshot has been restored, used by tests.
+   */
+  void awaitSnapshotRestore() throws InterruptedException, ExecutionException {
+    if (restoring != null) {
+      restoring.get();
+    }
   }
 
-  public <T> T get(Class<T> klass, Object key) {
+  private void saveSnapshot() {
     try {
-      return getAsync(klass, key).get();
+      snapshot.save(mappings.values());
     }
-    catch (InterruptedException e) {
-      return null;
+    catch (IOException | RuntimeException e) {
+      LOG.warn("could not save cache snapshot; msg={}", e.getMessage(), e);
     }
-    catch (ExecutionException e) {
-      if (e.getCause() instanceof RuntimeException) {
-        throw (RuntimeException) e.getCause();
+  }
+
+  private void restoreSnapshot() {
+    try {
+      snapshot.restore(this);
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.warn("could not restore cache snapshot; msg={}", e.getMessage(), e);
+    }
+  }
+
+  public Session getSession() {
+    return session;
+  }
+
+  /**
+   * A mapper of the same entities in another keyspace, for deployments
+   * with a keyspace per tenant. It shares the session, the configuration
+   * and the class metadata with this mapper and has statements and caches
+   * of its own. The entity caches of all views count against one budget,
+   * the mapper's cache budget or else the view cache budget, so their
+   * footprint does not grow with the number of keyspaces. Partition
+   * caches are bounded per view.
+   *
+   * Views live until they are closed, or this mapper is. Closing a view
+   * drops its caches and MBeans, the next call for the keyspace returns a
+   * new view. A closed view must not be used anymore.
+   */
+  public MonetaMapper forKeyspace(String keyspace) {
+    if (parent != null)
+      return parent.forKeyspace(keyspace);
+
+    if (keyspace.equals(this.keyspace))
+      return this;
+
+    MonetaMapper ret = views.get(keyspace);
+
+    if (ret == null) {
+      ret = new MonetaMapper(this, keyspace);
+
+      MonetaMapper prev = views.putIfAbsent(keyspace, ret);
+
+      if (prev != null) {
+        ret = prev;
       }
-      else {
-        throw new RuntimeException(e.getCause());
+    }
+
+    return ret;
+  }
+
+  // Forgets the view, so that its caches can be collected
+  private void closeView(MonetaMapper view) {
+    if (!views.remove(view.keyspace, view))
+      return;
+
+    // Mappings are created under the view's lock, none can be added while
+    // they are released
+    synchronized (view) {
+      view.closed = true;
+
+      for (Mapping<?> mapping : view.getMappings()) {
+        mapping.close();
+
+        if (mbeans != null) {
+          mbeans.unregister(mapping);
+        }
       }
     }
   }
 
+  public String getKeyspace() {
+    return keyspace;
+  }
+
+  public <T> T get(Class<T> klass, Object key) {
+    return get(klass, key, (OperationOptions) null);
+  }
+
+  /**
+   * Loads the entity, with the given options taking precedence over the
+   * ones configured for its class.
+   */
+  public <T> T get(Class<T> klass, Object key, OperationOptions options) {
+    MapperScope scope = MapperScope.current(this);
+
+    if (scope != null)
+      return await(scope.getOwnAsync(klass, key, options));
+
+    Mapping<T> mapping = mappingFor(klass);
+
+    // Serve cache hits without going through a future
+    T ret = mapping.getCached(session, key);
+
+    if (ret != null)
+      return ret;
+
+    return await(bounded(mapping.fetch(session, key, options)));
+  }
+
+  /**
+   * Loads the entity, giving up after the timeout. Only the wait is given
+   * up: the driver can't abort the read, which holds its connection and is
+   * counted in flight until Cassandra answers. In a scope, the other gets
+   * of the key keep waiting for the load.
+   *
+   * @throws OperationTimeoutException if the timeout elapses first
+   */
+  public <T> T get(Class<T> klass, Object key, long timeout, TimeUnit unit) {
+    MapperScope scope = MapperScope.current(this);
+
+    ListenableFuture<T> future = scope == null ?
+      load(klass, key, null) :
+      scope.getOwnAsync(klass, key, null);
+
+    return await(future, unit.toMillis(timeout));
+  }
+
   public <T> T get(Class<T> klass, Object part, Object... parts) {
-    return get(klass, listifyVarargs(part, parts));
+    return get(klass, CompositeKey.of(part, parts));
   }
 
   public <T> T get(Class<T> klass, List<? extends Object> key) {
-    return get(klass, new CompositeKey(key));
+    return get(klass, CompositeKey.of(key));
   }
 
   public <T> ListenableFuture<T> getAsync(Class<T> klass, Object key) {
-    return mappingFor(klass).get(session, key);
+    return getAsync(klass, key, (OperationOptions) null);
+  }
+
+  public <T> ListenableFuture<T> getAsync(Class<T> klass, Object key, OperationOptions options) {
+    MapperScope scope = MapperScope.current(this);
+
+    if (scope != null)
+      return scope.getAsync(klass, key, options);
+
+    return load(klass, key, options);
+  }
+
+  // Loads the entity without going through the scope
+  <T> ListenableFuture<T> load(Class<T> klass, Object key, OperationOptions options) {
+    return bounded(mappingFor(klass).get(session, key, options));
+  }
+
+  /**
+   * Opens a scope in which gets of the same class and key return the same
+   * instance. It applies to this thread's gets until it is closed.
+   */
+  public MapperScope openScope() {
+    return new MapperScope(this);
   }
 
   public <T> ListenableFuture<T> getAsync(Class<T> klass, Object part, Object... parts) {
-    return getAsync(klass, listifyVarargs(part, parts));
+    return getAsync(klass, CompositeKey.of(part, parts));
   }
 
   public <T> ListenableFuture<T> getAsync(Class<T> klass, List<? extends Object> key) {
-    return getAsync(klass, new CompositeKey(key));
+    return getAsync(klass, CompositeKey.of(key));
   }
 
   public <T> Collection<T> getAll(Class<T> klass, Iterable<?> keys) {
-    return null;
+    return getAll(klass, keys, null);
+  }
+
+  public <T> Collection<T> getAll(Class<T> klass, Iterable<?> keys, OperationOptions options) {
+    return await(getAllAsync(klass, keys, options));
   }
 
   public <T> ListenableFuture<Collection<T>> getAllAsync(
     Class<T> klass, Iterable<?> keys) {
-    return null;
+    return getAllAsync(klass, keys, null);
+  }
+
+  /**
+   * Loads the entities for all of the given keys. Entities that do not
+   * exist are left out of the result.
+   */
+  public <T> ListenableFuture<Collection<T>> getAllAsync(
+    Class<T> klass, Iterable<?> keys, OperationOptions options) {
+    long start = System.nanoTime();
+    return bounded(mappingFor(klass).getAll(session, keys, options), start);
+  }
+
+  /**
+   * Loads all the entities whose leading primary key columns equal the
+   * given parts, in clustering order. Use getRange with KeyRange.of to
+   * pass options.
+   */
+  public <T> List<T> getPartition(Class<T> klass, Object part, Object... parts) {
+    return getRange(klass, KeyRange.of(part, parts));
+  }
+
+  public <T> ListenableFuture<List<T>> getPartitionAsync(
+    Class<T> klass, Object part, Object... parts) {
+    return getRangeAsync(klass, KeyRange.of(part, parts));
+  }
+
+  /**
+   * Loads the entities of the range in clustering order. Results of
+   * @CachedPartitions classes are cached until an entity of the partition
+   * is persisted or deleted through the mapper.
+   */
+  public <T> List<T> getRange(Class<T> klass, KeyRange range) {
+    return getRange(klass, range, null);
+  }
+
+  public <T> List<T> getRange(Class<T> klass, KeyRange range, OperationOptions options) {
+    return await(getRangeAsync(klass, range, options));
+  }
+
+  public <T> ListenableFuture<List<T>> getRangeAsync(Class<T> klass, KeyRange range) {
+    return getRangeAsync(klass, range, null);
+  }
+
+  public <T> ListenableFuture<List<T>> getRangeAsync(
+    Class<T> klass, KeyRange range, OperationOptions options) {
+    return bounded(mappingFor(klass).getRange(session, range, options));
   }
 
   public <T> T persist(T obj) {
-    try {
-      return persistAsync(obj).get();
-    }
-    catch (InterruptedException e) {
-      return null;
+    return persist(obj, null);
+  }
+
+  public <T> T persist(T obj, OperationOptions options) {
+    return await(persistAsync(obj, options));
+  }
+
+  /**
+   * Persists the entity, giving up after the timeout. Only the wait is
+   * given up, the write may still be applied.
+   *
+   * @throws OperationTimeoutException if the timeout elapses first
+   */
+  public <T> T persist(T obj, long timeout, TimeUnit unit) {
+    return await(persistAsync(obj), unit.toMillis(timeout));
+  }
+
+  public <T> ListenableFuture<T> persistAsync(T obj) {
+    return persistAsync(obj, null);
+  }
+
+  public <T> ListenableFuture<T> persistAsync(T obj, OperationOptions options) {
+    Mapping<T> mapping = mappingFor(obj);
+    MapperScope scope = MapperScope.current(this);
+
+    if (scope != null) {
+      scope.put(mapping.getTarget(), mapping.keyOf(obj), obj);
     }
-    catch (ExecutionException e) {
-      return null;
+
+    return bounded(mapping.persist(session, obj, options));
+  }
+
+  public <T> List<T> persistAll(Iterable<T> objs) {
+    return persistAll(objs, null);
+  }
+
+  public <T> List<T> persistAll(Iterable<T> objs, OperationOptions options) {
+    return await(persistAllAsync(objs, options));
+  }
+
+  /**
+   * Persists the entities concurrently, each one with the given options,
+   * for example a TTL or write timestamp shared by all of them.
+   */
+  public <T> ListenableFuture<List<T>> persistAllAsync(
+    Iterable<T> objs, OperationOptions options) {
+
+    List<ListenableFuture<T>> persists = new ArrayList<>();
+
+    for (T obj : objs) {
+      persists.add(persistAsync(obj, options));
     }
+
+    return Futures.allAsList(persists);
   }
 
-  public <T> ListenableFuture<T> persistAsync(T obj) {
-    return mappingFor(obj).persist(session, obj);
+  /**
+   * Passes every entity of the table to the sink, scanning up to
+   * `parallelism` token ranges at once. Entities are decoded without going
+   * through the cache.
+   *
+   * @throws ScanException if the scan fails, holding the progress to resume
+   *   the scan from
+   */
+  public <T> ScanProgress scanAll(Class<T> klass, int parallelism, ScanSink<T> sink) {
+    return await(scanAllAsync(klass, parallelism, sink));
+  }
+
+  public <T> ListenableFuture<ScanProgress> scanAllAsync(
+    Class<T> klass, int parallelism, ScanSink<T> sink) {
+    return resumeScanAsync(klass, TableScan.newProgress(session, parallelism), sink);
+  }
+
+  /**
+   * Scans the ranges that the given progress has not completed yet. Ranges
+   * restart after their last fully scanned partition, so entities of the
+   * page that was being read when the scan failed may be passed again.
+   */
+  public <T> ScanProgress resumeScan(Class<T> klass, ScanProgress progress, ScanSink<T> sink) {
+    return await(resumeScanAsync(klass, progress, sink));
+  }
+
+  public <T> ListenableFuture<ScanProgress> resumeScanAsync(
+    Class<T> klass, ScanProgress progress, ScanSink<T> sink) {
+    return new TableScan<>(session, mappingFor(klass), progress, sink, executor).start();
+  }
+
+  /**
+   * Writes the entities as SSTables to `directory/<keyspace>/<table>`,
+   * ready to be streamed into the cluster with sstableloader. This is much
+   * faster than persisting a large number of entities one at a time.
+   *
+   * Writing SSTables uses Cassandra's configuration. Without a
+   * cassandra.yaml on the classpath or in the cassandra.config property,
+   * the defaults are used, and loading the file stays off for the whole
+   * JVM.
+   *
+   * @return the directory that holds the SSTables
+   */
+  public <T> File bulkImport(Class<T> klass, Iterable<T> entities, File directory)
+    throws IOException {
+    return new BulkImport<>(session, mappingFor(klass)).write(entities, directory);
+  }
+
+  /**
+   * Loads the entity whose @Index column holds the value, with one read of
+   * the lookup table and one get by primary key. When several entities
+   * hold the value, any one of them is returned.
+   */
+  public <T> T getBy(Class<T> klass, String column, Object value) {
+    return getBy(klass, column, value, null);
+  }
+
+  public <T> T getBy(Class<T> klass, String column, Object value, OperationOptions options) {
+    return await(getByAsync(klass, column, value, options));
+  }
+
+  public <T> ListenableFuture<T> getByAsync(Class<T> klass, String column, Object value) {
+    return getByAsync(klass, column, value, null);
+  }
+
+  public <T> ListenableFuture<T> getByAsync(
+    Class<T> klass, String column, Object value, OperationOptions options) {
+    return bounded(mappingFor(klass).getBy(session, column, value, options));
   }
 
   public <T> void delete(Class<T> klass, Object key) {
+    delete(klass, key, null);
+  }
+
+  public <T> void delete(Class<T> klass, Object key, OperationOptions options) {
+    await(deleteAsync(klass, key, options));
+  }
+
+  /**
+   * Deletes the entity, giving up after the timeout. Only the wait is
+   * given up, the delete may still be applied.
+   *
+   * @throws OperationTimeoutException if the timeout elapses first
+   */
+  public <T> void delete(Class<T> klass, Object key, long timeout, TimeUnit unit) {
+    await(deleteAsync(klass, key), unit.toMillis(timeout));
+  }
+
+  public <T> ListenableFuture<Void> deleteAsync(Class<T> klass, Object key) {
+    return deleteAsync(klass, key, null);
+  }
+
+  public <T> ListenableFuture<Void> deleteAsync(
+    Class<T> klass, Object key, OperationOptions options) {
+    MapperScope scope = MapperScope.current(this);
+
+    if (scope != null) {
+      scope.evict(klass, key);
+    }
+
+    return bounded(mappingFor(klass).delete(session, key, options));
+  }
+
+  /**
+   * Deletes all the entities whose leading primary key columns equal the
+   * given parts, with a single tombstone. Use deleteRange with KeyRange.of
+   * to pass options.
+   */
+  public <T> void deletePartition(Class<T> klass, Object part, Object... parts) {
+    deleteRange(klass, KeyRange.of(part, parts));
+  }
+
+  public <T> ListenableFuture<Void> deletePartitionAsync(
+    Class<T> klass, Object part, Object... parts) {
+    return deleteRangeAsync(klass, KeyRange.of(part, parts));
+  }
+
+  /**
+   * Deletes the entities of the range. Cassandra only deletes whole
+   * prefixes with a single tombstone, so ranges with bounds or a limit
+   * have their keys read first and are deleted row by row, in batches of
+   * a hundred rows.
+   */
+  public <T> void deleteRange(Class<T> klass, KeyRange range) {
+    deleteRange(klass, range, null);
+  }
+
+  public <T> void deleteRange(Class<T> klass, KeyRange range, OperationOptions options) {
+    await(deleteRangeAsync(klass, range, options));
   }
 
+  public <T> ListenableFuture<Void> deleteRangeAsync(Class<T> klass, KeyRange range) {
+    return deleteRangeAsync(klass, range, null);
+  }
+
+  public <T> ListenableFuture<Void> deleteRangeAsync(
+    Class<T> klass, KeyRange range, OperationOptions options) {
+    MapperScope scope = MapperScope.current(this);
+
+    if (scope != null) {
+      scope.evict(klass, range);
+    }
+
+    return bounded(mappingFor(klass).deleteRange(session, range, options));
+  }
+
+  public <T> void deleteAll(Class<T> klass, Iterable<?> keys) {
+    deleteAll(klass, keys, null);
+  }
+
+  public <T> void deleteAll(Class<T> klass, Iterable<?> keys, OperationOptions options) {
+    await(deleteAllAsync(klass, keys, options));
+  }
+
+  public <T> ListenableFuture<Void> deleteAllAsync(Class<T> klass, Iterable<?> keys) {
+    return deleteAllAsync(klass, keys, null);
+  }
+
+  /**
+   * Deletes the entities of the keys, batching the keys of each partition
+   * a hundred at a time.
+   */
+  public <T> ListenableFuture<Void> deleteAllAsync(
+    Class<T> klass, Iterable<?> keys, OperationOptions options) {
+    MapperScope scope = MapperScope.current(this);
+
+    if (scope != null) {
+      for (Object key : keys) {
+        scope.evict(klass, key);
+      }
+    }
+
+    long start = System.nanoTime();
+    return bounded(mappingFor(klass).deleteAll(session, keys, options), start);
+  }
+
+  /**
+   * Estimated bytes held by the entity caches, or -1 when no cache budget
+   * is configured. Views report the bytes of the budget they share.
+   */
+  public long getCachedBytes() {
+    return cacheBudget == null ? -1 : cacheBudget.getUsedBytes();
+  }
+
+  long getCacheBudget() {
+    return cacheBudget == null ? -1 : cacheBudget.getMaxBytes();
+  }
+
+  Collection<Mapping<?>> getMappings() {
+    return mappings.values();
+  }
+
+  Collection<MonetaMapper> getViews() {
+    return views.values();
+  }
+
+  /**
+   * Counters of the hedged reads of the entity class.
+   */
+  public HedgeStats getHedgeStats(Class<?> klass) {
+    return mappingFor(klass).getHedgeStats();
+  }
+
+  /**
+   * Evicts the entity from the cache, so that the next get reads it from
+   * Cassandra.
+   */
   public <T> void invalidate(Class<T> klass, Object key) {
+    mappingFor(klass).invalidate(key);
   }
 
   public <T> void invalidateAll(Class<T> klass, Iterable<?> keys) {
+    Mapping<T> mapping = mappingFor(klass);
+
+    for (Object key : keys) {
+      mapping.invalidate(key);
+    }
   }
 
-  private Mapping mappingFor(Class<?> klass) {
-    Mapping ret = mappings.get(klass);
+  @SuppressWarnings("unchecked")
+  <T> Mapping<T> mappingFor(Class<T> klass) {
+    Mapping<T> ret = (Mapping<T>) mappings.get(klass);
 
     if (ret == null) {
       synchronized (this) {
         // Try again with lock
-        ret = mappings.get(klass);
+        ret = (Mapping<T>) mappings.get(klass);
 
         if (ret == null) {
+          if (closed)
+            throw new IllegalStateException("keyspace view is closed; keyspace=" + keyspace);
+
           try {
-            ret = new Mapping(klass, keyspace);
-            mappings = ImmutableMap.<Class<?>, Mapping>builder()
+            if (parent == null) {
+              ret = new Mapping<>(
+                klass, keyspace, null, executor, optionsFor(klass), slowLog, cacheBudget);
+            }
+            else {
+              // Reuse the reflected metadata of the parent's mapping
+              Mapping<T> template = parent.mappingFor(klass);
+
+              if (template == null)
+                return null;
+
+              ret = template.forKeyspace(keyspace, cacheBudget);
+            }
+
+            mappings = ImmutableMap.<Class<?>, Mapping<?>>builder()
               .putAll(mappings)
               .put(klass, ret)
               .build();
+
+            if (mbeans != null) {
+              mbeans.register(ret);
+            }
           }
           catch (IllegalAccessException e) {
             LOG.warn("could not map {}; msg={}", klass, e.getMessage(), e);
@@ -138,19 +720,67 @@ public class MonetaMapper {
     return ret;
   }
 
-  private <T> Mapping mappingFor(T obj) {
-    return mappingFor(obj.getClass());
+  private OperationOptions optionsFor(Class<?> klass) {
+    return defaultOptions
+      .merge(OperationOptions.forEntity(klass))
+      .merge(classOptions.get(klass));
+  }
+
+  // Fails the operation once the mapper's deadline elapses
+  private <X> ListenableFuture<X> bounded(ListenableFuture<X> future) {
+    return Timeouts.within(future, deadline);
   }
 
-  private List<Object> listifyVarargs(Object first, Object[] rest) {
-    List<Object> ret = new ArrayList<>(rest.length + 1);
+  // Operations sending many statements count the deadline from their start
+  private <X> ListenableFuture<X> bounded(ListenableFuture<X> future, long startNanos) {
+    return Timeouts.within(future, deadline, startNanos);
+  }
+
+  /**
+   * Waits for the operation, which is already bounded by the deadline.
+   */
+  <X> X await(ListenableFuture<X> future) {
+    return await(future, 0);
+  }
 
-    ret.add(first);
+  /**
+   * Waits for the operation for up to `millis`, or until it completes when
+   * zero. The future is cancelled when the wait times out or the thread is
+   * interrupted, which stops the mapper's follow-up work but not the
+   * statements already sent, see Timeouts. Callers pass futures that are
+   * theirs alone to cancel.
+   */
+  static <X> X await(ListenableFuture<X> future, long millis) {
+    try {
+      return millis > 0 ? future.get(millis, TimeUnit.MILLISECONDS) : future.get();
+    }
+    catch (TimeoutException e) {
+      future.cancel(true);
+      throw new OperationTimeoutException("operation timed out after " + millis + "ms", e);
+    }
+    catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new OperationInterruptedException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
 
-    for (int i = 0; i < rest.length; ++i) {
-      ret.add(rest[i]);
+      if (cause instanceof TimeoutException) {
+        throw new OperationTimeoutException(cause.getMessage(), cause);
+      }
+      else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      else {
+        throw new RuntimeException(cause);
+      }
     }
+  }
 
-    return ret;
+  @SuppressWarnings("unchecked")
+  private <T> Mapping<T> mappingFor(T obj) {
+    return mappingFor((Class<T>) obj.getClass());
   }
+
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package io.tilde.moneta;
+
+/**
+ * Thrown by the blocking methods of the mapper when the calling thread is
+ * interrupted while it waits. The wait is given up, the statements already
+ * sent are not aborted, and the thread's interrupt status is set again, so
+ * that the caller still sees it.
+ *
+ * @author Carl Lerche
+ */
+public class OperationInterruptedException extends RuntimeException {
+
+  OperationInterruptedException(InterruptedException cause) {
+    super("interrupted while waiting for the operation", cause);
+  }
+}
@@ -0,0 +1,280 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.Query;
+import com.datastax.driver.core.policies.RetryPolicy;
+import com.datastax.driver.core.querybuilder.Delete;
+import com.datastax.driver.core.querybuilder.Insert;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import io.tilde.moneta.annotations.Table;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consistency levels, timeouts, retry policy, TTL and write timestamp of
+ * the statements issued by the mapper. Unset options fall back on the next
+ * level: options passed to a call, then options configured for the class,
+ * then the @Table annotation, then the mapper's defaults and finally the
+ * driver's.
+ *
+ * Instances are immutable, every `with` method returns a copy.
+ *
+ * @author Carl Lerche
+ */
+public class OperationOptions {
+
+  static final OperationOptions NONE = new OperationOptions();
+
+  private ConsistencyLevel readConsistency;
+
+  private ConsistencyLevel writeConsistency;
+
+  private long readTimeout;
+
+  private long writeTimeout;
+
+  private RetryPolicy retryPolicy;
+
+  private long hedgeDelay;
+
+  private double hedgePercentile;
+
+  // Seconds, null when unset, zero for no TTL
+  private Integer ttl;
+
+  // Microseconds, null for the coordinator's time
+  private Long timestamp;
+
+  public OperationOptions() {
+  }
+
+  private OperationOptions(OperationOptions other) {
+    this.readConsistency = other.readConsistency;
+    this.writeConsistency = other.writeConsistency;
+    this.readTimeout = other.readTimeout;
+    this.writeTimeout = other.writeTimeout;
+    this.retryPolicy = other.retryPolicy;
+    this.hedgeDelay = other.hedgeDelay;
+    this.hedgePercentile = other.hedgePercentile;
+    this.ttl = other.ttl;
+    this.timestamp = other.timestamp;
+  }
+
+  static OperationOptions forEntity(Class<?> target) {
+    Table table = target.getAnnotation(Table.class);
+
+    if (table == null)
+      return NONE;
+
+    OperationOptions ret = new OperationOptions();
+    ret.readConsistency = consistency(table.readConsistency());
+    ret.writeConsistency = consistency(table.writeConsistency());
+    ret.readTimeout = table.readTimeout();
+    ret.writeTimeout = table.writeTimeout();
+    ret.ttl = table.ttl() > 0 ? table.ttl() : null;
+    return ret;
+  }
+
+  public OperationOptions withReadConsistency(ConsistencyLevel val) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.readConsistency = val;
+    return ret;
+  }
+
+  public OperationOptions withWriteConsistency(ConsistencyLevel val) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.writeConsistency = val;
+    return ret;
+  }
+
+  /**
+   * Fails reads that take longer than the duration with a TimeoutException.
+   */
+  public OperationOptions withReadTimeout(long duration, TimeUnit unit) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.readTimeout = unit.toMillis(duration);
+    return ret;
+  }
+
+  /**
+   * Fails writes that take longer than the duration with a
+   * TimeoutException. The write may still be applied.
+   */
+  public OperationOptions withWriteTimeout(long duration, TimeUnit unit) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.writeTimeout = unit.toMillis(duration);
+    return ret;
+  }
+
+  public OperationOptions withRetryPolicy(RetryPolicy val) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.retryPolicy = val;
+    return ret;
+  }
+
+  /**
+   * Sends a second attempt of a read that has not been answered after the
+   * delay, and uses whichever answers first. Reads are idempotent, so this
+   * only costs the extra load of the hedged attempts.
+   */
+  public OperationOptions withHedgedReads(long delay, TimeUnit unit) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.hedgeDelay = unit.toMillis(delay);
+    return ret;
+  }
+
+  /**
+   * Hedges reads that take longer than the given percentile, between 0 and
+   * 100, of the recent read latencies of the entity. The delay given to
+   * withHedgedReads is used until enough latencies have been recorded, and
+   * as a lower bound afterwards. Each class tracks up to 16 percentiles,
+   * reads asking for more only wait the delay.
+   */
+  public OperationOptions withHedgedReadsAtPercentile(double percentile) {
+    if (percentile <= 0 || percentile >= 100)
+      throw new IllegalArgumentException("percentile must be between 0 and 100");
+
+    OperationOptions ret = new OperationOptions(this);
+    ret.hedgePercentile = percentile;
+    return ret;
+  }
+
+  /**
+   * Persisted columns expire after the duration, zero to never expire.
+   */
+  public OperationOptions withTtl(long duration, TimeUnit unit) {
+    long seconds = unit.toSeconds(duration);
+
+    if (seconds < 0 || seconds > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("ttl out of range; seconds=" + seconds);
+
+    OperationOptions ret = new OperationOptions(this);
+    ret.ttl = (int) seconds;
+    return ret;
+  }
+
+  /**
+   * Writes with the given timestamp, in microseconds since the epoch,
+   * rather than the coordinator's time.
+   */
+  public OperationOptions withTimestamp(long micros) {
+    OperationOptions ret = new OperationOptions(this);
+    ret.timestamp = micros;
+    return ret;
+  }
+
+  public ConsistencyLevel getReadConsistency() {
+    return readConsistency;
+  }
+
+  public ConsistencyLevel getWriteConsistency() {
+    return writeConsistency;
+  }
+
+  public long getReadTimeout() {
+    return readTimeout;
+  }
+
+  public long getWriteTimeout() {
+    return writeTimeout;
+  }
+
+  public RetryPolicy getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public long getHedgeDelay() {
+    return hedgeDelay;
+  }
+
+  public double getHedgePercentile() {
+    return hedgePercentile;
+  }
+
+  public Integer getTtl() {
+    return ttl;
+  }
+
+  public Long getTimestamp() {
+    return timestamp;
+  }
+
+  boolean isHedging() {
+    return hedgeDelay > 0 || hedgePercentile > 0;
+  }
+
+  /**
+   * These options, with the ones set in `overrides` taking precedence.
+   */
+  OperationOptions merge(OperationOptions overrides) {
+    if (overrides == null || overrides == NONE)
+      return this;
+
+    OperationOptions ret = new OperationOptions(this);
+
+    if (overrides.readConsistency != null)
+      ret.readConsistency = overrides.readConsistency;
+
+    if (overrides.writeConsistency != null)
+      ret.writeConsistency = overrides.writeConsistency;
+
+    if (overrides.readTimeout > 0)
+      ret.readTimeout = overrides.readTimeout;
+
+    if (overrides.writeTimeout > 0)
+      ret.writeTimeout = overrides.writeTimeout;
+
+    if (overrides.retryPolicy != null)
+      ret.retryPolicy = overrides.retryPolicy;
+
+    if (overrides.hedgeDelay > 0)
+      ret.hedgeDelay = overrides.hedgeDelay;
+
+    if (overrides.hedgePercentile > 0)
+      ret.hedgePercentile = overrides.hedgePercentile;
+
+    if (overrides.ttl != null)
+      ret.ttl = overrides.ttl;
+
+    if (overrides.timestamp != null)
+      ret.timestamp = overrides.timestamp;
+
+    return ret;
+  }
+
+  void applyTo(Query query, boolean write) {
+    ConsistencyLevel consistency = write ? writeConsistency : readConsistency;
+
+    if (consistency != null) {
+      query.setConsistencyLevel(consistency);
+    }
+
+    if (retryPolicy != null) {
+      query.setRetryPolicy(retryPolicy);
+    }
+  }
+
+  void applyTo(Insert insert) {
+    if (ttl != null) {
+      insert.using(QueryBuilder.ttl(ttl));
+    }
+
+    if (timestamp != null) {
+      insert.using(QueryBuilder.timestamp(timestamp));
+    }
+  }
+
+  void applyTo(Delete delete) {
+    if (timestamp != null) {
+      delete.using(QueryBuilder.timestamp(timestamp));
+    }
+  }
+
+  long timeout(boolean write) {
+    return write ? writeTimeout : readTimeout;
+  }
+
+  private static ConsistencyLevel consistency(String name) {
+    return name.isEmpty() ? null : ConsistencyLevel.valueOf(name);
+  }
+}
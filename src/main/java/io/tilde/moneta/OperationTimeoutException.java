@@ -0,0 +1,15 @@
+package io.tilde.moneta;
+
+/**
+ * Thrown by the blocking methods of the mapper when the operation did not
+ * complete before its deadline, or one of its statements before its
+ * timeout. Its statements are not aborted, writes may still be applied.
+ *
+ * @author Carl Lerche
+ */
+public class OperationTimeoutException extends RuntimeException {
+
+  OperationTimeoutException(String msg, Throwable cause) {
+    super(msg, cause);
+  }
+}
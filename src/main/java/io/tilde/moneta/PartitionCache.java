@@ -0,0 +1,104 @@
+package io.tilde.moneta;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.tilde.moneta.annotations.CachedPartitions;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Holds the results of the range queries of a @CachedPartitions class,
+ * grouped by the value of their first primary key column so that a write
+ * drops all the results of its partition at once.
+ *
+ * A result read before a write but stored after it would be stale. Every
+ * invalidation bumps an epoch, striped by partition, and a result is only
+ * kept if the epoch of its partition did not move while it was read.
+ *
+ * @author Carl Lerche
+ */
+class PartitionCache<T> {
+
+  // Partitions share epochs, a collision only costs a dropped result
+  static final int EPOCH_STRIPES = 64;
+
+  static <X> PartitionCache<X> cacheFor(Class<X> target) {
+    CachedPartitions cached = target.getAnnotation(CachedPartitions.class);
+
+    if (cached == null)
+      return null;
+
+    return new PartitionCache<>(cached);
+  }
+
+  private final Cache<Object, ConcurrentMap<KeyRange, List<T>>> cache;
+
+  private final AtomicLongArray epochs = new AtomicLongArray(EPOCH_STRIPES);
+
+  PartitionCache(CachedPartitions cached) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumSize(cached.maximumSize())
+      .expireAfterWrite(cached.expireAfterWrite(), TimeUnit.SECONDS)
+      .build();
+  }
+
+  List<T> get(KeyRange range) {
+    ConcurrentMap<KeyRange, List<T>> ranges = cache.getIfPresent(range.getPartition());
+    return ranges == null ? null : ranges.get(range);
+  }
+
+  /**
+   * The epoch to pass to {@link #put} once the range has been read. It
+   * must be taken before the query is sent.
+   */
+  long epoch(KeyRange range) {
+    return epochs.get(stripe(range.getPartition()));
+  }
+
+  void put(KeyRange range, List<T> entities, long epoch) {
+    Object partition = range.getPartition();
+    ConcurrentMap<KeyRange, List<T>> ranges = cache.getIfPresent(partition);
+
+    if (ranges == null) {
+      ranges = new ConcurrentHashMap<>();
+
+      ConcurrentMap<KeyRange, List<T>> prev = cache.asMap().putIfAbsent(partition, ranges);
+
+      if (prev != null) {
+        ranges = prev;
+      }
+    }
+
+    ranges.put(range, entities);
+
+    // A write completed while the range was read, it may be stale
+    if (epochs.get(stripe(partition)) != epoch) {
+      ranges.remove(range, entities);
+    }
+  }
+
+  void invalidate(Object partition) {
+    epochs.incrementAndGet(stripe(partition));
+    cache.invalidate(partition);
+  }
+
+  void invalidateAll() {
+    for (int i = 0; i < EPOCH_STRIPES; ++i) {
+      epochs.incrementAndGet(i);
+    }
+
+    cache.invalidateAll();
+  }
+
+  long size() {
+    return cache.size();
+  }
+
+  private static int stripe(Object partition) {
+    return (partition.hashCode() & Integer.MAX_VALUE) % EPOCH_STRIPES;
+  }
+}
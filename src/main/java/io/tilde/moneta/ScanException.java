@@ -0,0 +1,21 @@
+package io.tilde.moneta;
+
+/**
+ * Thrown when a table scan fails. The progress can be passed back to the
+ * mapper to resume the scan where it stopped.
+ *
+ * @author Carl Lerche
+ */
+public class ScanException extends RuntimeException {
+
+  private final ScanProgress progress;
+
+  ScanException(ScanProgress progress, Throwable cause) {
+    super("table scan failed; scanned=" + progress.getScanned(), cause);
+    this.progress = progress;
+  }
+
+  public ScanProgress getProgress() {
+    return progress;
+  }
+}
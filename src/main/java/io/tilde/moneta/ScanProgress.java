@@ -0,0 +1,124 @@
+package io.tilde.moneta;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tracks how far each token range of a table scan has been read. It is
+ * serializable, so a failed scan can be resumed by another process.
+ *
+ * @author Carl Lerche
+ */
+public class ScanProgress implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * A range of the token ring, from start (exclusive) to end (inclusive).
+   */
+  public static class Range implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BigInteger start;
+
+    private final BigInteger end;
+
+    // Last token that was fully scanned
+    private volatile BigInteger position;
+
+    private volatile long scanned;
+
+    Range(BigInteger start, BigInteger end) {
+      this.start = start;
+      this.end = end;
+      this.position = start;
+    }
+
+    public BigInteger getStart() {
+      return start;
+    }
+
+    public BigInteger getEnd() {
+      return end;
+    }
+
+    public BigInteger getPosition() {
+      return position;
+    }
+
+    public long getScanned() {
+      return scanned;
+    }
+
+    public boolean isComplete() {
+      return position.equals(end);
+    }
+
+    void advance(BigInteger token, int entities) {
+      position = token;
+      scanned += entities;
+    }
+
+    public String toString() {
+      return "Range(" + start + ", " + end + "]; position=" + position;
+    }
+  }
+
+  private final int parallelism;
+
+  private final List<Range> ranges;
+
+  /**
+   * Splits the ring (min, max] in `count` ranges of equal size.
+   */
+  ScanProgress(BigInteger min, BigInteger max, int count, int parallelism) {
+    List<Range> ranges = new ArrayList<>(count);
+    BigInteger size = max.subtract(min);
+    BigInteger start = min;
+
+    for (int i = 1; i <= count; ++i) {
+      BigInteger end = i == count ? max :
+        min.add(size.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)));
+
+      ranges.add(new Range(start, end));
+      start = end;
+    }
+
+    this.parallelism = parallelism;
+    this.ranges = Collections.unmodifiableList(ranges);
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  public List<Range> getRanges() {
+    return ranges;
+  }
+
+  public boolean isComplete() {
+    for (Range range : ranges) {
+      if (!range.isComplete())
+        return false;
+    }
+
+    return true;
+  }
+
+  /**
+   * The number of entities passed to the sink so far.
+   */
+  public long getScanned() {
+    long ret = 0;
+
+    for (Range range : ranges) {
+      ret += range.getScanned();
+    }
+
+    return ret;
+  }
+}
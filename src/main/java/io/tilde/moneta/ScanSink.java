@@ -0,0 +1,21 @@
+package io.tilde.moneta;
+
+/**
+ * Receives the entities of a table scan.
+ *
+ * The ranges of a scan are read concurrently, so the sink is called from
+ * up to `parallelism` threads at once. Throwing from the sink fails the
+ * scan, which can then be resumed from its progress.
+ *
+ * @author Carl Lerche
+ */
+public abstract class ScanSink<T> {
+
+  public abstract void onEntity(T entity);
+
+  /**
+   * Called once every entity of the range has been passed to the sink.
+   */
+  public void onRangeComplete(ScanProgress.Range range) {
+  }
+}
@@ -1,5 +1,6 @@
 package io.tilde.moneta;
 
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.querybuilder.Clause;
 
 import java.util.Arrays;
@@ -19,4 +20,16 @@ public class SingleKeyMapping extends KeyMapping {
     return Arrays.asList(eq(field.getName(), key));
   }
 
+  public List<FieldMapping> getFields() {
+    return Arrays.asList(field);
+  }
+
+  public Object keyOf(Object entity) {
+    return field.get(entity);
+  }
+
+  public Object keyOf(Row row) {
+    return field.cast(row);
+  }
+
 }
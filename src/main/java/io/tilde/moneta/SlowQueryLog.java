@@ -0,0 +1,158 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.Query;
+import com.datastax.driver.core.QueryTrace;
+import com.datastax.driver.core.ResultSet;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the statements that take longer than a threshold, with the entity
+ * class, key, coordinator and timings. A fraction of the statements can
+ * also be sent with Cassandra query tracing, in which case they are logged
+ * with their trace events whether they were slow or not.
+ *
+ * Entries are logged under this class' logger, so they can be routed
+ * separately from the mapper's debug output.
+ *
+ * @author Carl Lerche
+ */
+class SlowQueryLog {
+  private static Logger LOG = LoggerFactory.getLogger(SlowQueryLog.class);
+
+  // Fetching a trace blocks until Cassandra has written it
+  private static final ExecutorService tracer = Executors.newSingleThreadExecutor(
+    new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("moneta-trace-%d")
+      .build());
+
+  private final long thresholdNanos;
+
+  private final double sample;
+
+  SlowQueryLog(long thresholdMillis, double sample) {
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    this.sample = sample;
+  }
+
+  /**
+   * Watches the statement, which must not have been sent yet, and enables
+   * tracing on it if it is sampled.
+   */
+  Watch watch(Class<?> target, Object key, Query query) {
+    boolean traced = sample > 0 && ThreadLocalRandom.current().nextDouble() < sample;
+
+    if (traced) {
+      query.enableTracing();
+    }
+
+    return new Watch(target, key, query, traced);
+  }
+
+  class Watch {
+
+    private final Class<?> target;
+
+    private final Object key;
+
+    private final Query query;
+
+    private final boolean traced;
+
+    private final long start = System.nanoTime();
+
+    Watch(Class<?> target, Object key, Query query, boolean traced) {
+      this.target = target;
+      this.key = key;
+      this.query = query;
+      this.traced = traced;
+    }
+
+    /**
+     * Logs the statement once the future completes, if it was slow or
+     * traced.
+     */
+    void on(ListenableFuture<ResultSet> future) {
+      Futures.addCallback(future, new FutureCallback<ResultSet>() {
+        public void onSuccess(ResultSet res) {
+          complete(res.getExecutionInfo(), null);
+        }
+
+        public void onFailure(Throwable t) {
+          complete(null, t);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private void complete(final ExecutionInfo info, final Throwable error) {
+      final long elapsed = System.nanoTime() - start;
+      final boolean slow = elapsed >= thresholdNanos;
+
+      if (!slow && !traced)
+        return;
+
+      if (!traced || info == null || info.getQueryTrace() == null) {
+        log(slow, elapsed, info, error, null);
+        return;
+      }
+
+      tracer.execute(new Runnable() {
+        public void run() {
+          log(slow, elapsed, info, error, info.getQueryTrace());
+        }
+      });
+    }
+
+    private void log(boolean slow, long elapsed, ExecutionInfo info,
+                     Throwable error, QueryTrace trace) {
+
+      StringBuilder events = new StringBuilder();
+
+      if (trace != null) {
+        try {
+          for (QueryTrace.Event event : trace.getEvents()) {
+            events.append(String.format("%n  %6dus %s [%s] %s",
+              event.getSourceElapsedMicros(), event.getSource(),
+              event.getThreadName(), event.getDescription()));
+          }
+        }
+        catch (RuntimeException e) {
+          events.append("\n  could not fetch trace; msg=").append(e.getMessage());
+        }
+      }
+
+      String msg = "{} operation; class={}; key={}; ms={}; coordinator={}; " +
+        "traceId={}; error={}; query={}{}";
+
+      Object[] args = new Object[] {
+        slow ? "slow" : "sampled",
+        target.getName(),
+        key,
+        TimeUnit.NANOSECONDS.toMillis(elapsed),
+        info == null ? null : info.getQueriedHost(),
+        trace == null ? null : trace.getTraceId(),
+        error == null ? null : error.getMessage(),
+        query,
+        events };
+
+      if (slow) {
+        LOG.warn(msg, args);
+      }
+      else {
+        LOG.info(msg, args);
+      }
+    }
+  }
+}
@@ -0,0 +1,290 @@
+package io.tilde.moneta;
+
+import com.datastax.driver.core.ColumnMetadata;
+import com.datastax.driver.core.DataType;
+import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.Query;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TableMetadata;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import com.datastax.driver.core.querybuilder.Select;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.datastax.driver.core.querybuilder.QueryBuilder.bindMarker;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gt;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.gte;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.lte;
+
+/**
+ * Reads every entity of a table by splitting the token ring in ranges and
+ * scanning up to `parallelism` of them at once.
+ *
+ * Each range is read in pages of `token(pk) > ? AND token(pk) <= ?`
+ * queries, since the driver does not page results. When a page is full,
+ * the rows of its last partition are dropped and that partition is read
+ * by itself, so that partitions larger than a page are not cut short.
+ *
+ * @author Carl Lerche
+ */
+class TableScan<T> {
+  private static Logger LOG = LoggerFactory.getLogger(TableScan.class);
+
+  // Rows read per query
+  static final int PAGE_SIZE = 1000;
+
+  // More ranges than workers, so that a slow range does not hold up the scan
+  static final int RANGES_PER_WORKER = 4;
+
+  private final Session session;
+
+  private final Mapping<T> mapping;
+
+  private final ScanProgress progress;
+
+  private final ScanSink<T> sink;
+
+  private final Executor executor;
+
+  private final PreparedStatement page;
+
+  private final PreparedStatement partition;
+
+  private final Queue<ScanProgress.Range> pending = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger running = new AtomicInteger();
+
+  private final SettableFuture<ScanProgress> result = SettableFuture.create();
+
+  TableScan(Session session, Mapping<T> mapping, ScanProgress progress,
+            ScanSink<T> sink, Executor executor) {
+    this.session = session;
+    this.mapping = mapping;
+    this.progress = progress;
+    this.sink = sink;
+    this.executor = executor;
+
+    List<String> partitionKey = new ArrayList<>();
+
+    for (ColumnMetadata col : tableFor(session, mapping).getPartitionKey()) {
+      partitionKey.add(col.getName());
+    }
+
+    String token = QueryBuilder.token(partitionKey.toArray(new String[0]));
+
+    Select.Selection select = mapping.selectColumns(QueryBuilder.select().column(token));
+
+    this.page = session.prepare(
+      select
+        .from(mapping.getKeyspace(), mapping.getTable())
+        .where(gt(token, bindMarker()))
+        .and(lte(token, bindMarker()))
+        .limit(PAGE_SIZE)
+        .toString());
+
+    this.partition = session.prepare(
+      select
+        .from(mapping.getKeyspace(), mapping.getTable())
+        .where(gte(token, bindMarker()))
+        .and(lte(token, bindMarker()))
+        .toString());
+  }
+
+  /**
+   * Starts a new scan of the whole ring.
+   */
+  static ScanProgress newProgress(Session session, int parallelism) {
+    if (parallelism < 1)
+      throw new IllegalArgumentException("parallelism must be positive");
+
+    String partitioner = session.execute(
+      QueryBuilder.select("partitioner").from("system", "local"))
+      .one().getString("partitioner");
+
+    int count = parallelism * RANGES_PER_WORKER;
+
+    if (partitioner.endsWith(".Murmur3Partitioner")) {
+      return new ScanProgress(
+        BigInteger.valueOf(Long.MIN_VALUE), BigInteger.valueOf(Long.MAX_VALUE),
+        count, parallelism);
+    }
+    else if (partitioner.endsWith(".RandomPartitioner")) {
+      return new ScanProgress(
+        BigInteger.ONE.negate(), BigInteger.ONE.shiftLeft(127), count, parallelism);
+    }
+    else {
+      throw new UnsupportedOperationException(
+        "cannot scan with partitioner; partitioner=" + partitioner);
+    }
+  }
+
+  ListenableFuture<ScanProgress> start() {
+    for (ScanProgress.Range range : progress.getRanges()) {
+      if (!range.isComplete()) {
+        pending.add(range);
+      }
+    }
+
+    int workers = Math.min(progress.getParallelism(), pending.size());
+
+    LOG.debug("scanning; table={}; ranges={}; workers={}",
+      mapping.getTable(), pending.size(), workers);
+
+    if (workers == 0) {
+      result.set(progress);
+      return result;
+    }
+
+    running.set(workers);
+
+    for (int i = 0; i < workers; ++i) {
+      next();
+    }
+
+    return result;
+  }
+
+  private void next() {
+    ScanProgress.Range range = result.isDone() ? null : pending.poll();
+
+    if (range != null) {
+      scan(range);
+    }
+    else if (running.decrementAndGet() == 0) {
+      result.set(progress);
+    }
+  }
+
+  private void scan(final ScanProgress.Range range) {
+    Futures.addCallback(
+      execute(page.bind(bindable(range.getPosition()), bindable(range.getEnd()))),
+      new FutureCallback<ResultSet>() {
+        public void onSuccess(ResultSet res) {
+          try {
+            onPage(range, res.all());
+          }
+          catch (RuntimeException e) {
+            onFailure(e);
+          }
+        }
+
+        public void onFailure(Throwable t) {
+          fail(range, t);
+        }
+      },
+      executor);
+  }
+
+  private void onPage(final ScanProgress.Range range, List<Row> rows) {
+    if (rows.size() < PAGE_SIZE) {
+      deliver(rows);
+      range.advance(range.getEnd(), rows.size());
+      sink.onRangeComplete(range);
+      next();
+      return;
+    }
+
+    // The last partition may continue past the page, read it by itself
+    final BigInteger last = tokenOf(rows.get(rows.size() - 1));
+    int complete = rows.size();
+
+    while (complete > 0 && tokenOf(rows.get(complete - 1)).equals(last)) {
+      --complete;
+    }
+
+    deliver(rows.subList(0, complete));
+
+    if (complete > 0) {
+      range.advance(tokenOf(rows.get(complete - 1)), complete);
+    }
+
+    Futures.addCallback(
+      execute(partition.bind(bindable(last), bindable(last))),
+      new FutureCallback<ResultSet>() {
+        public void onSuccess(ResultSet res) {
+          try {
+            List<Row> rows = res.all();
+
+            deliver(rows);
+            range.advance(last, rows.size());
+            scan(range);
+          }
+          catch (RuntimeException e) {
+            onFailure(e);
+          }
+        }
+
+        public void onFailure(Throwable t) {
+          fail(range, t);
+        }
+      },
+      executor);
+  }
+
+  // The lazy columns of a page are read together
+  private void deliver(List<Row> rows) {
+    ConcurrentMap<FieldMapping, LazyLoader> batch = mapping.newLazyBatch();
+
+    for (Row row : rows) {
+      sink.onEntity(mapping.decode(session, row, batch));
+    }
+  }
+
+  private void fail(ScanProgress.Range range, Throwable t) {
+    LOG.warn("scan failed; table={}; range={}; msg={}",
+      mapping.getTable(), range, t.getMessage(), t);
+
+    result.setException(new ScanException(progress, t));
+  }
+
+  // Reads with the entity's consistency, retry policy and timeout
+  private ListenableFuture<ResultSet> execute(Query query) {
+    OperationOptions options = mapping.getOptions();
+
+    options.applyTo(query, false);
+    return Timeouts.within(session.executeAsync(query), options.timeout(false));
+  }
+
+  private Object bindable(BigInteger token) {
+    if (page.getVariables().getType(0).getName() == DataType.Name.BIGINT)
+      return token.longValue();
+
+    return token;
+  }
+
+  private static BigInteger tokenOf(Row row) {
+    if (row.getColumnDefinitions().getType(0).getName() == DataType.Name.BIGINT)
+      return BigInteger.valueOf(row.getLong(0));
+
+    return row.getVarint(0);
+  }
+
+  private static TableMetadata tableFor(Session session, Mapping<?> mapping) {
+    KeyspaceMetadata ks = session.getCluster().getMetadata()
+      .getKeyspace(mapping.getKeyspace());
+
+    TableMetadata ret = ks == null ? null : ks.getTable(mapping.getTable());
+
+    if (ret == null)
+      throw new IllegalArgumentException("table does not exist; table=" +
+        mapping.getKeyspace() + "." + mapping.getTable());
+
+    return ret;
+  }
+}
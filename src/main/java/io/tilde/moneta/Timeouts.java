@@ -0,0 +1,130 @@
+package io.tilde.moneta;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fails futures that do not complete in time. The driver only has a
+ * connection wide read timeout, so per operation timeouts are enforced
+ * on the futures it returns.
+ *
+ * A timeout only bounds how long the caller waits. The driver's futures
+ * ignore cancel, so the statement keeps running on the server and keeps
+ * its stream on the connection until Cassandra answers or the driver's
+ * read timeout fires.
+ *
+ * @author Carl Lerche
+ */
+class Timeouts {
+
+  private static final ScheduledExecutorService timer =
+    Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("moneta-timeout-%d")
+        .build());
+
+  static ScheduledFuture<?> schedule(Runnable task, long millis) {
+    return timer.schedule(task, millis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * A future completing like the given one, whose cancellation is not
+   * passed on. Lets a caller give up on a future others still wait on.
+   */
+  static <X> ListenableFuture<X> shielded(ListenableFuture<X> future) {
+    if (future.isDone())
+      return future;
+
+    final SettableFuture<X> ret = SettableFuture.create();
+
+    Futures.addCallback(future, new FutureCallback<X>() {
+      public void onSuccess(X result) {
+        ret.set(result);
+      }
+
+      public void onFailure(Throwable t) {
+        ret.setException(t);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    return ret;
+  }
+
+  /**
+   * Like {@link #within(ListenableFuture, long)}, counting from `startNanos`
+   * rather than from now, for operations that took a while to send their
+   * statements. Past the deadline, the future fails right away, even if
+   * it completed in the meantime.
+   */
+  static <X> ListenableFuture<X> within(
+    ListenableFuture<X> future, long millis, long startNanos) {
+
+    if (millis <= 0)
+      return future;
+
+    long remaining = millis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+    if (remaining > 0)
+      return within(future, remaining);
+
+    future.cancel(true);
+    return Futures.immediateFailedFuture(
+      new TimeoutException("timed out after " + millis + "ms"));
+  }
+
+  /**
+   * A future completing like the given one, or failing with a
+   * TimeoutException after `millis`. The given future is then cancelled,
+   * which stops the mapper's own follow-up work but not a statement that
+   * is already in flight, see above. Cancelling the returned future
+   * cancels the given one too.
+   */
+  static <X> ListenableFuture<X> within(final ListenableFuture<X> future, final long millis) {
+    if (millis <= 0 || future.isDone())
+      return future;
+
+    final SettableFuture<X> ret = SettableFuture.create();
+
+    final ScheduledFuture<?> timeout = timer.schedule(new Runnable() {
+      public void run() {
+        if (ret.setException(new TimeoutException("timed out after " + millis + "ms"))) {
+          future.cancel(true);
+        }
+      }
+    }, millis, TimeUnit.MILLISECONDS);
+
+    ret.addListener(new Runnable() {
+      public void run() {
+        if (ret.isCancelled()) {
+          timeout.cancel(false);
+          future.cancel(true);
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    Futures.addCallback(future, new FutureCallback<X>() {
+      public void onSuccess(X result) {
+        timeout.cancel(false);
+        ret.set(result);
+      }
+
+      public void onFailure(Throwable t) {
+        timeout.cancel(false);
+        ret.setException(t);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    return ret;
+  }
+}
@@ -14,4 +14,22 @@ public @interface Cached {
 
   public boolean value() default true;
 
+  /**
+   * The maximum number of entities kept in the cache. Ignored when the
+   * mapper is configured with a cache budget.
+   */
+  public long maximumSize() default 1000;
+
+  /**
+   * Seconds an entity stays cached after it was last read.
+   */
+  public long expireAfterAccess() default 600;
+
+  /**
+   * Seconds after which a cached entity is reloaded in the background the
+   * next time it is read. The stale entity keeps being served until the
+   * reload completes. Zero disables refresh-ahead.
+   */
+  public long refreshAfterWrite() default 0;
+
 }
@@ -0,0 +1,30 @@
+package io.tilde.moneta.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the entities returned by MonetaMapper#getRange and #getPartition,
+ * by partition and query bounds. Persisting or deleting an entity through
+ * the mapper drops every cached result of its partition.
+ *
+ * @author Carl Lerche
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CachedPartitions {
+
+  /**
+   * The maximum number of partitions whose results are kept.
+   */
+  public long maximumSize() default 100;
+
+  /**
+   * Seconds a result stays cached, which bounds how long writes that do
+   * not go through the mapper go unnoticed.
+   */
+  public long expireAfterWrite() default 60;
+
+}
@@ -0,0 +1,28 @@
+package io.tilde.moneta.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Stores a String, byte[] or ByteBuffer field compressed in a blob column.
+ * Values shorter than the threshold, or that do not shrink, are stored
+ * as is, behind the same one byte header.
+ *
+ * @author Carl Lerche
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Compressed {
+
+  enum Codec { LZ4, SNAPPY }
+
+  Codec value() default Codec.LZ4;
+
+  /**
+   * Values of fewer bytes are not compressed.
+   */
+  int threshold() default 512;
+
+}
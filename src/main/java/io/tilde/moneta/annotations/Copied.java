@@ -0,0 +1,20 @@
+package io.tilde.moneta.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Copies a ByteBuffer field out of the driver's response when it is
+ * loaded. Without it the field is a read-only view of the response, which
+ * keeps the whole response in memory for as long as the entity lives, so
+ * use it on entities that are kept around. Fields of @Cached classes are
+ * always copied.
+ *
+ * @author Carl Lerche
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Copied {
+}
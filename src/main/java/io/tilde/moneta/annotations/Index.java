@@ -0,0 +1,29 @@
+package io.tilde.moneta.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maintains a lookup table from the values of a @Column to the primary key
+ * of the entities that hold them, so that entities can be found with
+ * MonetaMapper#getBy without a secondary index.
+ *
+ * The lookup table must exist and be made of the indexed column followed
+ * by the primary key columns of the entity, for example:
+ *
+ *   CREATE TABLE users_by_email (email text, id uuid, PRIMARY KEY (email, id))
+ *
+ * @author Carl Lerche
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Index {
+
+  /**
+   * The name of the lookup table, defaults to `<table>_by_<column>`.
+   */
+  String value() default "-";
+
+}
@@ -0,0 +1,17 @@
+package io.tilde.moneta.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Leaves a heavy column out of the entity's select. The field must be a
+ * LazyColumn, which reads the column the first time it is accessed.
+ *
+ * @author Carl Lerche
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Lazy {
+}
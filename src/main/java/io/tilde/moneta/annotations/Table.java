@@ -11,4 +11,30 @@ public @interface Table {
 
   String value();
 
+  /**
+   * Consistency level of the reads of the entity, for example "ONE".
+   * Defaults to the one configured on the mapper.
+   */
+  String readConsistency() default "";
+
+  /**
+   * Consistency level of the writes of the entity, for example "QUORUM".
+   */
+  String writeConsistency() default "";
+
+  /**
+   * Milliseconds after which a read fails, zero for no timeout.
+   */
+  long readTimeout() default 0;
+
+  /**
+   * Milliseconds after which a write fails, zero for no timeout.
+   */
+  long writeTimeout() default 0;
+
+  /**
+   * Seconds after which persisted columns expire, zero for never.
+   */
+  int ttl() default 0;
+
 }
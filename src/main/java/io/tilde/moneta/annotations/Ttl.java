@@ -0,0 +1,21 @@
+package io.tilde.moneta.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Loads the remaining time to live, in seconds, of the named column into
+ * an int field. Zero when the column does not expire. The field is not
+ * written by persist.
+ *
+ * @author Carl Lerche
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Ttl {
+
+  String value();
+
+}
@@ -3,14 +3,17 @@ package io.tilde.moneta.test;
 import com.datastax.driver.core.Cluster;
 import com.datastax.driver.core.Metadata;
 import com.datastax.driver.core.exceptions.NoHostAvailableException;
+import com.google.common.io.ByteStreams;
 import org.apache.cassandra.service.CassandraDaemon;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
-import java.net.URL;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -29,6 +32,12 @@ public class CassandraServer {
 
     long connectTimeout = 50000;
 
+    int nativePort = 9042;
+
+    int rpcPort = 9160;
+
+    int storagePort = 7000;
+
     Path tmpPath;
 
     public Builder withClean() {
@@ -50,11 +59,38 @@ public class CassandraServer {
       return this;
     }
 
+    public Builder withNativePort(int port) {
+      nativePort = port;
+      return this;
+    }
+
+    public Builder withRpcPort(int port) {
+      rpcPort = port;
+      return this;
+    }
+
+    public Builder withStoragePort(int port) {
+      storagePort = port;
+      return this;
+    }
+
+    /**
+     * Shifts all ports by the given offset, so that several servers can run
+     * side by side, e.g. one per test fork.
+     */
+    public Builder withPortOffset(int offset) {
+      nativePort += offset;
+      rpcPort += offset;
+      storagePort += offset;
+      return this;
+    }
+
     public CassandraServer build() {
       if (tmpPath == null)
         throw new CassandraServerConfigException("tmpPath was not specified");
 
-      return new CassandraServer(clean, tmpPath, connectTimeout);
+      return new CassandraServer(
+        clean, tmpPath, connectTimeout, nativePort, rpcPort, storagePort);
     }
 
     public CassandraServer start() {
@@ -74,14 +110,30 @@ public class CassandraServer {
 
   private final long connectTimeout;
 
+  private final int nativePort;
+
+  private final int rpcPort;
+
+  private final int storagePort;
+
   private CassandraDaemon daemon;
 
   private Thread thread;
 
-  CassandraServer(boolean cleanOnStart, Path tmpPath, long connectTimeout) {
+  CassandraServer(
+    boolean cleanOnStart, Path tmpPath, long connectTimeout,
+    int nativePort, int rpcPort, int storagePort) {
+
     this.cleanOnStart = cleanOnStart;
     this.tmpPath = tmpPath;
     this.connectTimeout = connectTimeout;
+    this.nativePort = nativePort;
+    this.rpcPort = rpcPort;
+    this.storagePort = storagePort;
+  }
+
+  public int getNativePort() {
+    return nativePort;
   }
 
   public void start() {
@@ -103,22 +155,28 @@ public class CassandraServer {
     // Start cassandra
     thread.start();
 
-    // Loop until we can connect
+    // Loop until the native transport accepts connections. Probing the
+    // socket is much cheaper than building a driver Cluster on every try.
 
     long start = System.nanoTime();
 
     try {
-      while (!maybeConnect()) {
+      while (!isListening()) {
         if (TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) > connectTimeout) {
           throw new CassandraServerException("could not start");
         }
 
-        Thread.sleep(250);
+        Thread.sleep(50);
       }
     }
     catch (InterruptedException e) {
     }
 
+    connect();
+
+    LOG.info("started; port={}; ms={}",
+      nativePort, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
     // Find any shutdown hooks registered by cassandra
     // TODO: Proxy to them on shutdown
     try {
@@ -171,20 +229,36 @@ public class CassandraServer {
     }
   }
 
-  private boolean maybeConnect() {
+  private boolean isListening() {
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress("127.0.0.1", nativePort), 100);
+      return true;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  // Connects once to make sure the server answers CQL requests
+  private void connect() {
+    Cluster cluster;
+
     try {
-      Cluster cluster = Cluster.builder()
+      cluster = Cluster.builder()
         .addContactPoint("127.0.0.1")
+        .withPort(nativePort)
         .build();
+    }
+    catch (NoHostAvailableException e) {
+      throw new CassandraServerException(e);
+    }
 
+    try {
       Metadata metadata = cluster.getMetadata();
-
       LOG.info("connected; cluster={}", metadata.getClusterName());
-
-      return true;
     }
-    catch (NoHostAvailableException e) {
-      return false;
+    finally {
+      cluster.shutdown();
     }
   }
 
@@ -202,20 +276,24 @@ public class CassandraServer {
     if (template == null)
       return null;
 
-    return template.replaceAll("%%tmpdir%%", tmpPath.toString());
+    return template
+      .replaceAll("%%tmpdir%%", tmpPath.toString())
+      .replaceAll("%%native_port%%", String.valueOf(nativePort))
+      .replaceAll("%%rpc_port%%", String.valueOf(rpcPort))
+      .replaceAll("%%storage_port%%", String.valueOf(storagePort));
   }
 
   private String readYmlTemplate() {
-    try {
-      URL url = CassandraServer.class.getResource("/io/tilde/moneta/test/cassandra.yml");
+    // Read as a stream, the template may be inside a jar
+    try (InputStream in =
+           CassandraServer.class.getResourceAsStream("/io/tilde/moneta/test/cassandra.yml")) {
 
-      if (url == null) {
+      if (in == null) {
         LOG.warn("cassandra.yml template does not exist");
         return null;
       }
 
-      Path path = Paths.get(url.toURI());
-      return new String(Files.readAllBytes(path), "UTF-8");
+      return new String(ByteStreams.toByteArray(in), "UTF-8");
     } catch (Exception e) {
       LOG.error("could not load cassandra config template", e);
       throw new CassandraServerException(e);
@@ -1,13 +1,34 @@
 package io.tilde.moneta;
 
 import com.datastax.driver.core.KeyspaceMetadata;
+import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
 import io.tilde.moneta.support.Cassandra;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class of the tests. The schema is created once per JVM and the tables
+ * are truncated before every test, instead of recreating the keyspace.
+ */
 public class TestCase {
 
+  // Keyspaces whose schema was created by this JVM
+  private static final Set<String> created = new HashSet<>();
+
+  // Tables to truncate before every test, by the keyspace of the tests that
+  // created them
+  private static final Map<String, List<String>> tables = new HashMap<>();
+
   @BeforeClass
   public static void startCassandra() {
     Cassandra.start();
@@ -19,11 +40,18 @@ public class TestCase {
     return "moneta";
   }
 
+  /**
+   * Configuration for mappers talking to the test server.
+   */
+  public MonetaConfig configure() {
+    return MonetaMapper.configure()
+      .withCluster(Cassandra.cluster())
+      .withKeyspace(keyspace());
+  }
+
   public MonetaMapper mapper() {
     if (mapper == null) {
-      mapper = MonetaMapper.configure()
-        .withKeyspace(keyspace())
-        .connect();
+      mapper = configure().connect();
     }
 
     return mapper;
@@ -33,8 +61,61 @@ public class TestCase {
     return mapper().getSession();
   }
 
+  public void awaitSnapshotRestore(MonetaMapper mapper) throws Exception {
+    mapper.awaitSnapshotRestore();
+  }
+
+  /**
+   * Decodes the row into an entity of the class, the way reads do.
+   */
+  public <T> T decode(Class<T> klass, Row row) {
+    return mapper().mappingFor(klass).decode(session(), row, null);
+  }
+
+  /**
+   * Builds the statement writing the entity's row without sending it.
+   */
+  @SuppressWarnings("unchecked")
+  public Statement insertFor(Object obj) {
+    Mapping<Object> mapping = (Mapping<Object>) mapper().mappingFor(obj.getClass());
+    return mapping.insertFor(obj, mapping.getOptions());
+  }
+
+  /**
+   * Latency at the percentile that reads of the class hedge after, in
+   * micros, or -1 until it is known.
+   */
+  public long hedgeThreshold(MonetaMapper mapper, Class<?> klass, double percentile) {
+    return mapper.mappingFor(klass).getHedgeThreshold(percentile);
+  }
+
   @Before
   public void reset() {
+    List<String> truncated;
+
+    synchronized (created) {
+      if (created.add(keyspace())) {
+        tables.put(keyspace(), new ArrayList<String>());
+        createSchema();
+      }
+
+      truncated = tables.get(keyspace());
+    }
+
+    for (String table : truncated) {
+      session().execute("TRUNCATE " + table);
+    }
+  }
+
+  @After
+  public void closeMapper() {
+    if (mapper != null) {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+
+  public void createSchema() {
     createKeyspace(keyspace());
 
     createTable(
@@ -47,6 +128,22 @@ public class TestCase {
     createTable(
       "playlists",
       "id uuid, title text, album varchar, PRIMARY KEY (id, title, album)");
+
+    createTable(
+      "users",
+      "id uuid PRIMARY KEY, email text, name text");
+
+    createTable(
+      "users_by_email",
+      "email text, id uuid, PRIMARY KEY (email, id)");
+
+    createTable(
+      "attachments",
+      "digest blob PRIMARY KEY, name text");
+
+    createTable(
+      "documents",
+      "id uuid PRIMARY KEY, body blob, attachment blob, thumbnail blob");
   }
 
   public void createKeyspace(String name) {
@@ -58,7 +155,7 @@ public class TestCase {
 
     session().execute(
       "CREATE KEYSPACE " + name + " WITH replication " +
-        "= {'class': 'SimpleStrategy', 'replication_factor':3};");
+        "= {'class': 'SimpleStrategy', 'replication_factor':1};");
   }
 
   public void createTable(String name, String props) {
@@ -67,5 +164,8 @@ public class TestCase {
 
   public void createTable(String name, String keyspace, String props) {
     session().execute("CREATE TABLE " + keyspace + "." + name + " (" + props + ");");
+    synchronized (created) {
+      tables.get(keyspace()).add(keyspace + "." + name);
+    }
   }
 }
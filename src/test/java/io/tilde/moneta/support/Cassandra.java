@@ -1,5 +1,6 @@
 package io.tilde.moneta.support;
 
+import com.datastax.driver.core.Cluster;
 import io.tilde.moneta.test.CassandraServer;
 
 import java.io.IOException;
@@ -8,22 +9,36 @@ import java.nio.file.Path;
 
 /**
  * Ensures that a cassandra server is running
+ *
+ * Every surefire fork runs its own server on ports shifted by the fork
+ * number, so that test classes can run in parallel forks.
  */
 public class Cassandra {
 
   private static CassandraServer daemon = null;
 
-  public static void start() {
+  private static Cluster cluster = null;
+
+  public static synchronized void start() {
     if (daemon != null) {
       return;
     }
 
     try {
       final Path tmpPath = Files.createTempDirectory("moneta-tests");
-      daemon = CassandraServer.newBuilder().withTmpPath(tmpPath).start();
+      daemon = CassandraServer.newBuilder()
+        .withTmpPath(tmpPath)
+        .withPortOffset(portOffset())
+        .start();
+
+      cluster = Cluster.builder()
+        .addContactPoint("127.0.0.1")
+        .withPort(daemon.getNativePort())
+        .build();
 
       Runtime.getRuntime().addShutdownHook(new Thread() {
         public void run() {
+          cluster.shutdown();
           daemon.stop();
           CassandraServer.deleteRecursive(tmpPath.toFile());
         }
@@ -34,4 +49,22 @@ public class Cassandra {
     }
   }
 
+  /**
+   * The cluster shared by all tests of this JVM.
+   */
+  public static Cluster cluster() {
+    start();
+    return cluster;
+  }
+
+  private static int portOffset() {
+    String fork = System.getProperty("moneta.test.fork");
+
+    if (fork == null || fork.isEmpty() || fork.startsWith("$")) {
+      return 0;
+    }
+
+    return (Integer.parseInt(fork) - 1) * 10;
+  }
+
 }
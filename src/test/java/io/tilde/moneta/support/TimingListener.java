@@ -0,0 +1,64 @@
+package io.tilde.moneta.support;
+
+import org.junit.runner.Description;
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints how long each test class took, slowest first, once the run is
+ * finished. Registered with surefire so suite time can be tracked.
+ */
+public class TimingListener extends RunListener {
+
+  private final Map<String, Long> classes = new LinkedHashMap<>();
+
+  private long runStart;
+
+  private long testStart;
+
+  public void testRunStarted(Description description) {
+    runStart = System.nanoTime();
+  }
+
+  public void testStarted(Description description) {
+    testStart = System.nanoTime();
+  }
+
+  public void testFinished(Description description) {
+    long elapsed = System.nanoTime() - testStart;
+    Long total = classes.get(description.getClassName());
+
+    classes.put(description.getClassName(), (total == null ? 0 : total) + elapsed);
+  }
+
+  public void testRunFinished(Result result) {
+    List<Map.Entry<String, Long>> sorted = new ArrayList<>(classes.entrySet());
+
+    Collections.sort(sorted, new Comparator<Map.Entry<String, Long>>() {
+      public int compare(Map.Entry<String, Long> a, Map.Entry<String, Long> b) {
+        return Long.compare(b.getValue(), a.getValue());
+      }
+    });
+
+    StringBuilder out = new StringBuilder("\nTest timings:\n");
+
+    for (Map.Entry<String, Long> entry : sorted) {
+      out.append(String.format("  %6d ms  %s%n",
+        TimeUnit.NANOSECONDS.toMillis(entry.getValue()), entry.getKey()));
+    }
+
+    out.append(String.format("  %6d ms  total with server startup, %d tests%n",
+      TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - runStart),
+      result.getRunCount()));
+
+    System.out.print(out);
+  }
+}
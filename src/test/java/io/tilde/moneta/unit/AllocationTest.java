@@ -0,0 +1,239 @@
+package io.tilde.moneta.unit;
+
+import com.datastax.driver.core.Row;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Bytes allocated per operation on the hot paths, measured with the
+ * allocation counter of the calling thread. The budgets leave headroom
+ * over the measured values, they are there to catch a change that starts
+ * allocating per row or per call, not a handful of bytes.
+ */
+public class AllocationTest extends TestCase {
+
+  static final int WARMUP = 20000;
+
+  static final int ITERATIONS = 10000;
+
+  @Table("samples")
+  @Cached
+  static class Sample {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    @Column
+    boolean explicit;
+
+    @Column
+    int plays;
+
+    @Column
+    long total;
+
+    @Column
+    ByteBuffer body;
+
+    @Column
+    byte[] thumbnail;
+
+    Sample(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+      this.explicit = true;
+      this.plays = 1000;
+      this.total = 1L << 40;
+      this.body = ByteBuffer.wrap(new byte[] { 1, 2, 3 });
+      this.thumbnail = new byte[] { 4, 5, 6 };
+    }
+
+    public Sample() {
+    }
+  }
+
+  // The columns of each type are decoded by entities reading only them
+  @Table("samples")
+  static class Key {
+
+    @PrimaryKey
+    UUID id;
+  }
+
+  @Table("samples")
+  static class Text {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+  }
+
+  @Table("samples")
+  static class Numbers {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    boolean explicit;
+
+    @Column
+    int plays;
+
+    @Column
+    long total;
+  }
+
+  @Table("samples")
+  static class Blob {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    ByteBuffer body;
+
+    @Column
+    byte[] thumbnail;
+  }
+
+  private com.sun.management.ThreadMXBean threads;
+
+  private Level level;
+
+  @Override
+  public String keyspace() {
+    return "moneta_allocation";
+  }
+
+  @Override
+  public void createSchema() {
+    super.createSchema();
+
+    createTable(
+      "samples",
+      "id uuid PRIMARY KEY, name text, explicit boolean, plays int, total bigint, " +
+        "body blob, thumbnail blob");
+  }
+
+  @Before
+  public void enableAllocationCounters() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+
+    threads = (com.sun.management.ThreadMXBean) bean;
+
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+
+    // The tests log at trace, which would be measured along with the mapper
+    level = Logger.getLogger("io.tilde").getLevel();
+    Logger.getLogger("io.tilde").setLevel(Level.INFO);
+  }
+
+  @After
+  public void restoreLogging() {
+    if (level != null) {
+      Logger.getLogger("io.tilde").setLevel(level);
+    }
+  }
+
+  long allocatedPerCall(Runnable op) {
+    long thread = Thread.currentThread().getId();
+
+    for (int i = 0; i < WARMUP; ++i) {
+      op.run();
+    }
+
+    long before = threads.getThreadAllocatedBytes(thread);
+
+    for (int i = 0; i < ITERATIONS; ++i) {
+      op.run();
+    }
+
+    return (threads.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+  }
+
+  long decodingCost(final Class<?> klass, final Row row) {
+    return allocatedPerCall(new Runnable() {
+      public void run() {
+        decode(klass, row);
+      }
+    });
+  }
+
+  Row stored(UUID id) {
+    return session().execute(
+      "SELECT * FROM " + keyspace() + ".samples WHERE id = " + id).one();
+  }
+
+  @Test
+  public void testCachedGets() {
+    final Sample sample = mapper().persist(new Sample("Zomg"));
+
+    assertThat(mapper().get(Sample.class, sample.id), notNullValue());
+
+    long cost = allocatedPerCall(new Runnable() {
+      public void run() {
+        mapper().get(Sample.class, sample.id);
+      }
+    });
+
+    assertThat(cost, lessThanOrEqualTo(64L));
+  }
+
+  @Test
+  public void testDecodingRows() {
+    Row row = stored(mapper().persist(new Sample("Zomg")).id);
+
+    // The UUID and the view of the response it is read from
+    assertThat(decodingCost(Key.class, row), lessThanOrEqualTo(192L));
+
+    // The decoded string
+    assertThat(decodingCost(Text.class, row), lessThanOrEqualTo(448L));
+
+    // The boxes of the values, the setters take objects
+    assertThat(decodingCost(Numbers.class, row), lessThanOrEqualTo(320L));
+
+    // A read only view of the response and a copy of the array
+    assertThat(decodingCost(Blob.class, row), lessThanOrEqualTo(512L));
+
+    assertThat(decodingCost(Sample.class, row), lessThanOrEqualTo(1024L));
+  }
+
+  @Test
+  public void testBuildingWrites() {
+    final Sample sample = new Sample("Zomg");
+
+    long cost = allocatedPerCall(new Runnable() {
+      public void run() {
+        insertFor(sample);
+      }
+    });
+
+    assertThat(cost, lessThanOrEqualTo(768L));
+  }
+}
@@ -1,5 +1,6 @@
 package io.tilde.moneta.unit;
 
+import io.tilde.moneta.MonetaMapper;
 import io.tilde.moneta.TestCase;
 import io.tilde.moneta.annotations.Column;
 import io.tilde.moneta.annotations.PrimaryKey;
@@ -8,10 +9,15 @@ import io.tilde.moneta.support.Cassandra;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class BasicModelTest extends TestCase {
@@ -101,6 +107,46 @@ public class BasicModelTest extends TestCase {
     assertThat(mapper().get(Song2.class, song.id).plays, equalTo(3L));
   }
 
+  @Test
+  public void testGettingMultipleModels() {
+    Song1 a = new Song1("A", false, 1);
+    Song1 b = new Song1("B", true, 2);
+
+    mapper().persist(a);
+    mapper().persist(b);
+
+    Collection<Song1> songs = mapper().getAll(
+      Song1.class, Arrays.asList(a.id, UUID.randomUUID(), b.id));
+
+    assertThat(songs, contains(a, b));
+  }
+
+  @Test
+  public void testDecodingOnConfiguredExecutor() {
+    final AtomicInteger decodes = new AtomicInteger();
+
+    MonetaMapper mapper = configure()
+      .withExecutor(new Executor() {
+        public void execute(Runnable command) {
+          decodes.incrementAndGet();
+          command.run();
+        }
+      })
+      .connect();
+
+    try {
+      Song1 song = new Song1("Zomg", true, 3);
+      mapper.persist(song);
+
+      assertThat(mapper.get(Song1.class, song.id), equalTo(song));
+      assertThat(decodes.get(), equalTo(2));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+
   @Test
   public void testLoadingVarIntAsBigInteger() {
   }
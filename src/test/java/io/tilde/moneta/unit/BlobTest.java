@@ -0,0 +1,122 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Copied;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BlobTest extends TestCase {
+
+  @Table("documents")
+  static class Document {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    ByteBuffer body;
+
+    @Column
+    @Copied
+    ByteBuffer attachment;
+
+    @Column
+    byte[] thumbnail;
+
+    Document(ByteBuffer body, ByteBuffer attachment, byte[] thumbnail) {
+      this.id = UUID.randomUUID();
+      this.body = body;
+      this.attachment = attachment;
+      this.thumbnail = thumbnail;
+    }
+
+    public Document() {
+    }
+  }
+
+  @Table("documents")
+  @Cached
+  static class CachedDocument {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    ByteBuffer body;
+
+    CachedDocument(ByteBuffer body) {
+      this.id = UUID.randomUUID();
+      this.body = body;
+    }
+
+    public CachedDocument() {
+    }
+  }
+
+  static ByteBuffer bytes(int... vals) {
+    ByteBuffer ret = ByteBuffer.allocate(vals.length);
+
+    for (int val : vals) {
+      ret.put((byte) val);
+    }
+
+    ret.flip();
+    return ret;
+  }
+
+  @Test
+  public void testLoadingBuffersAsReadOnlyViews() {
+    Document doc = mapper().persist(new Document(bytes(1, 2, 3), null, null));
+    Document loaded = mapper().get(Document.class, doc.id);
+
+    assertThat(loaded.body, equalTo(bytes(1, 2, 3)));
+    assertThat(loaded.body.isReadOnly(), equalTo(true));
+    assertThat(loaded.attachment, nullValue());
+    assertThat(loaded.thumbnail, nullValue());
+  }
+
+  @Test
+  public void testCopyingBuffersOutOfTheResponse() {
+    Document doc = mapper().persist(new Document(null, bytes(4, 5), new byte[] { 6, 7, 8 }));
+    Document loaded = mapper().get(Document.class, doc.id);
+
+    assertThat(loaded.attachment, equalTo(bytes(4, 5)));
+    assertThat(loaded.attachment.isReadOnly(), equalTo(false));
+    assertThat(loaded.attachment.capacity(), equalTo(2));
+    assertThat(loaded.thumbnail, equalTo(new byte[] { 6, 7, 8 }));
+  }
+
+  @Test
+  public void testWritingTheRemainingBytesOfTheCallersBuffer() {
+    ByteBuffer body = bytes(1, 2, 3, 4);
+    body.position(2);
+
+    Document doc = mapper().persist(new Document(body, null, null));
+
+    assertThat(body.position(), equalTo(2));
+    assertThat(mapper().get(Document.class, doc.id).body, equalTo(bytes(3, 4)));
+  }
+
+  @Test
+  public void testCopyingBuffersOfCachedEntities() {
+    CachedDocument doc = mapper().persist(new CachedDocument(bytes(1, 2, 3)));
+
+    mapper().invalidate(CachedDocument.class, doc.id);
+
+    CachedDocument loaded = mapper().get(CachedDocument.class, doc.id);
+
+    // A view would keep the whole response alive in the cache
+    assertThat(loaded.body, equalTo(bytes(1, 2, 3)));
+    assertThat(loaded.body.capacity(), equalTo(3));
+  }
+}
@@ -0,0 +1,146 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import io.tilde.moneta.test.CassandraServer;
+import org.apache.cassandra.service.StorageService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class BulkImportTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    @Column
+    boolean explicit;
+
+    @Column
+    int plays;
+
+    Song(UUID id, String name, boolean explicit, int plays) {
+      this.id = id;
+      this.name = name;
+      this.explicit = explicit;
+      this.plays = plays;
+    }
+
+    public Song() {
+    }
+
+    public boolean equals(Object o) {
+      if (o instanceof Song) {
+        Song other = (Song) o;
+
+        return
+          Objects.equals(id, other.id) &&
+          Objects.equals(name, other.name) &&
+          explicit == other.explicit &&
+          plays == other.plays;
+      }
+
+      return false;
+    }
+
+    public int hashCode() {
+      return Objects.hash(id, name, explicit, plays);
+    }
+  }
+
+  @Table("playlists")
+  static class Playlist {
+
+    @PrimaryKey
+    UUID id;
+
+    @PrimaryKey
+    String title;
+
+    @PrimaryKey
+    String album;
+
+    Playlist(UUID id, String title, String album) {
+      this.id = id;
+      this.title = title;
+      this.album = album;
+    }
+
+    public Playlist() {
+    }
+  }
+
+  File directory;
+
+  @Before
+  public void createDirectory() throws Exception {
+    directory = Files.createTempDirectory("moneta-import").toFile();
+  }
+
+  @After
+  public void deleteDirectory() {
+    CassandraServer.deleteRecursive(directory);
+  }
+
+  @Test
+  public void testImportingEntitiesWithSSTables() throws Exception {
+    List<Song> songs = new ArrayList<>();
+
+    for (int i = 0; i < 500; ++i) {
+      songs.add(new Song(UUID.randomUUID(), "Song " + i, i % 2 == 0, i));
+    }
+
+    songs.add(new Song(UUID.randomUUID(), null, false, 0));
+
+    File dir = mapper().bulkImport(Song.class, songs, directory);
+
+    assertThat(dir, equalTo(new File(new File(directory, keyspace()), "songs")));
+    assertThat(mapper().get(Song.class, songs.get(0).id), nullValue());
+
+    StorageService.instance.bulkLoad(dir.getPath());
+
+    for (Song song : songs) {
+      assertThat(mapper().get(Song.class, song.id), equalTo(song));
+    }
+  }
+
+  @Test
+  public void testImportingEntitiesWithClusteringColumns() throws Exception {
+    UUID id = UUID.randomUUID();
+    List<Playlist> playlists = new ArrayList<>();
+
+    for (int i = 0; i < 10; ++i) {
+      playlists.add(new Playlist(id, "Title " + i, "Album " + i));
+    }
+
+    StorageService.instance.bulkLoad(
+      mapper().bulkImport(Playlist.class, playlists, directory).getPath());
+
+    assertThat(
+      session().execute("SELECT * FROM " + keyspace() + ".playlists WHERE id = " + id).all().size(),
+      equalTo(10));
+
+    assertThat(
+      mapper().get(Playlist.class, id, "Title 3", "Album 3").album,
+      equalTo("Album 3"));
+  }
+}
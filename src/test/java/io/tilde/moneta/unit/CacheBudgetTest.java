@@ -0,0 +1,108 @@
+package io.tilde.moneta.unit;
+
+import com.google.common.base.Strings;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class CacheBudgetTest extends TestCase {
+
+  static final long BUDGET = 40000;
+
+  @Table("songs")
+  @Cached
+  static class HotSong {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    HotSong(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public HotSong() {
+    }
+  }
+
+  @Table("songs")
+  @Cached
+  static class ColdSong {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    ColdSong(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public ColdSong() {
+    }
+  }
+
+  @Test
+  public void testCachesShareTheBudgetByHitRate() throws Exception {
+    MonetaMapper mapper = configure().withCacheBudget(BUDGET).connect();
+
+    try {
+      // About 2KB each
+      String name = Strings.repeat("x", 1000);
+      List<UUID> hot = new ArrayList<>();
+
+      for (int i = 0; i < 10; ++i) {
+        hot.add(mapper.persist(new HotSong(name)).id);
+      }
+
+      for (int i = 0; i < 5; ++i) {
+        for (UUID id : hot) {
+          mapper.get(HotSong.class, id);
+        }
+      }
+
+      for (int i = 0; i < 40; ++i) {
+        UUID id = mapper.persist(new ColdSong(name)).id;
+        mapper.get(ColdSong.class, id);
+      }
+
+      assertThat(mapper.getCachedBytes(), greaterThan(BUDGET / 2));
+      assertThat(mapper.getCachedBytes(), lessThanOrEqualTo(BUDGET));
+
+      // The hot entities are still served from the cache
+      session().execute("TRUNCATE " + keyspace() + ".songs");
+
+      for (UUID id : hot) {
+        assertThat(mapper.get(HotSong.class, id), notNullValue());
+      }
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+
+  @Test
+  public void testCachesAreUnboundedByBytesWithoutABudget() throws Exception {
+    assertThat(mapper().getCachedBytes(), equalTo(-1L));
+  }
+}
@@ -1,15 +1,26 @@
 package io.tilde.moneta.unit;
 
+import io.tilde.moneta.MonetaMapper;
 import io.tilde.moneta.TestCase;
 import io.tilde.moneta.annotations.Cached;
 import io.tilde.moneta.annotations.Column;
 import io.tilde.moneta.annotations.PrimaryKey;
 import io.tilde.moneta.annotations.Table;
+import io.tilde.moneta.test.CassandraServer;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 public class CachingTest extends TestCase {
@@ -47,4 +58,166 @@ public class CachingTest extends TestCase {
     assertThat(cached.id, equalTo(song.id));
   }
 
+  @Table("songs")
+  @Cached(refreshAfterWrite = 1)
+  static class RefreshedSong {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    RefreshedSong(UUID id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+  }
+
+  @Test
+  public void testStaleCachedModelIsRefreshedInTheBackground()
+    throws InterruptedException {
+    RefreshedSong song = new RefreshedSong(UUID.randomUUID(), "Before");
+    mapper().persist(song);
+
+    // Fill cache
+    mapper().get(RefreshedSong.class, song.id);
+
+    session().execute(
+      "UPDATE moneta.songs SET name = 'After' WHERE id = " + song.id);
+
+    Thread.sleep(1100);
+
+    // The stale entity is served while the reload is in flight
+    assertThat(mapper().get(RefreshedSong.class, song.id).name, equalTo("Before"));
+
+    String name = null;
+
+    for (int i = 0; i < 50 && !"After".equals(name); ++i) {
+      Thread.sleep(100);
+      name = mapper().get(RefreshedSong.class, song.id).name;
+    }
+
+    assertThat(name, equalTo("After"));
+  }
+
+  // Runs tasks on the calling thread, except the first one submitted once
+  // armed, which is held until the test runs it
+  static class HoldingExecutor implements Executor {
+
+    volatile boolean armed;
+
+    final BlockingQueue<Runnable> held = new LinkedBlockingQueue<>();
+
+    public void execute(Runnable task) {
+      if (armed) {
+        armed = false;
+        held.add(task);
+      }
+      else {
+        task.run();
+      }
+    }
+  }
+
+  @Test
+  public void testWritesDuringARefreshWinOverIt() throws InterruptedException {
+    HoldingExecutor executor = new HoldingExecutor();
+    MonetaMapper mapper = configure().withExecutor(executor).connect();
+
+    try {
+      RefreshedSong song = new RefreshedSong(UUID.randomUUID(), "Before");
+      mapper.persist(song);
+      mapper.get(RefreshedSong.class, song.id);
+
+      Thread.sleep(1100);
+
+      // Starts the refresh, its result is held back
+      executor.armed = true;
+      assertThat(mapper.get(RefreshedSong.class, song.id).name, equalTo("Before"));
+
+      Runnable refresh = executor.held.poll(5, TimeUnit.SECONDS);
+      assertThat(refresh, notNullValue());
+
+      mapper.persist(new RefreshedSong(song.id, "After"));
+
+      // Caches the entity it read before the write, unless it sees the write
+      refresh.run();
+
+      assertThat(mapper.get(RefreshedSong.class, song.id).name, equalTo("After"));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+
+  @Table("attachments")
+  @Cached
+  static class Attachment {
+
+    // Blob keys can't be written to snapshots
+    @PrimaryKey
+    ByteBuffer digest;
+
+    @Column
+    String name;
+
+    Attachment(ByteBuffer digest, String name) {
+      this.digest = digest;
+      this.name = name;
+    }
+
+    public Attachment() {
+    }
+  }
+
+  @Test
+  public void testCacheSnapshotWarmsCachesOnConnect() throws Exception {
+    Path dir = Files.createTempDirectory("moneta-snapshot");
+    Path path = dir.resolve("cache");
+
+    MonetaMapper first = null;
+    MonetaMapper second = null;
+
+    try {
+      first = configure()
+        .withCacheSnapshot(path)
+        .connect();
+
+      CachedSong song = new CachedSong(UUID.randomUUID(), "Snapshotted");
+      first.persist(song);
+      first.get(CachedSong.class, song.id);
+
+      // Classes with keys the snapshot can't hold don't keep the others out
+      Attachment attachment = new Attachment(ByteBuffer.wrap(new byte[] { 1, 2 }), "a");
+      first.persist(attachment);
+      first.get(Attachment.class, attachment.digest);
+
+      first.close();
+      first.getSession().shutdown();
+      first = null;
+
+      second = configure()
+        .withCacheSnapshot(path)
+        .connect();
+
+      awaitSnapshotRestore(second);
+
+      // Only a restored cache can still return the song
+      session().execute("DELETE FROM moneta.songs WHERE id = " + song.id);
+
+      assertThat(second.get(CachedSong.class, song.id).name, equalTo("Snapshotted"));
+    }
+    finally {
+      for (MonetaMapper mapper : Arrays.asList(first, second)) {
+        if (mapper != null) {
+          mapper.close();
+          mapper.getSession().shutdown();
+        }
+      }
+
+      CassandraServer.deleteRecursive(dir.toFile());
+    }
+  }
 }
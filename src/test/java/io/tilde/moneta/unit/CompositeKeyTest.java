@@ -1,10 +1,12 @@
 package io.tilde.moneta.unit;
 
+import io.tilde.moneta.CompositeKey;
 import io.tilde.moneta.TestCase;
 import io.tilde.moneta.annotations.PrimaryKey;
 import io.tilde.moneta.annotations.Table;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -64,4 +66,39 @@ public class CompositeKeyTest extends TestCase {
     assertThat(p4, equalTo(p2));
 
   }
+
+  @Test
+  public void testGetCompositeKeyModelWithFixedArityKey() {
+    Playlist p1 = new Playlist(UUID.randomUUID(), "Foo", "Bar");
+    mapper().persist(p1);
+
+    Playlist p2 = mapper().get(Playlist.class, CompositeKey.of(p1.id, "Foo", "Bar"));
+    assertThat(p2, equalTo(p1));
+  }
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void testCompositeKeysAreEqualRegardlessOfShape() {
+    UUID uuid = UUID.randomUUID();
+
+    CompositeKey fixed = CompositeKey.of(uuid, 7L);
+    CompositeKey listed = CompositeKey.of(Arrays.<Object>asList(uuid, 7L));
+    CompositeKey constructed = new CompositeKey(Arrays.<Object>asList(uuid, 7L));
+
+    assertThat(fixed, equalTo(listed));
+    assertThat(listed, equalTo(fixed));
+    assertThat(constructed, equalTo(fixed));
+    assertThat(fixed, equalTo(constructed));
+    assertThat(fixed.hashCode(), equalTo(listed.hashCode()));
+    assertThat(fixed.hashCode(), equalTo(Arrays.asList(uuid, 7L).hashCode()));
+  }
+
+  @Test
+  public void testCompositeKeysKeepTheTypesOfTheirComponents() {
+    UUID uuid = UUID.randomUUID();
+
+    assertThat(CompositeKey.of(uuid, 5).get(1), equalTo((Object) 5));
+    assertThat(CompositeKey.of(uuid, 5), equalTo(CompositeKey.of(Arrays.<Object>asList(uuid, 5))));
+    assertThat(CompositeKey.of(uuid, "a", 5).get(2), equalTo((Object) 5));
+  }
 }
@@ -0,0 +1,98 @@
+package io.tilde.moneta.unit;
+
+import com.datastax.driver.core.Row;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Compressed;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class CompressionTest extends TestCase {
+
+  @Table("documents")
+  static class Document {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    @Compressed
+    String body;
+
+    @Column
+    @Compressed(Compressed.Codec.SNAPPY)
+    byte[] attachment;
+
+    @Column
+    @Compressed(threshold = 1024)
+    ByteBuffer thumbnail;
+
+    Document(String body, byte[] attachment, ByteBuffer thumbnail) {
+      this.id = UUID.randomUUID();
+      this.body = body;
+      this.attachment = attachment;
+      this.thumbnail = thumbnail;
+    }
+
+    public Document() {
+    }
+  }
+
+  static String json(int entries) {
+    StringBuilder ret = new StringBuilder("[");
+
+    for (int i = 0; i < entries; ++i) {
+      ret.append(i == 0 ? "" : ",")
+        .append("{\"id\":").append(i)
+        .append(",\"name\":\"Song number ").append(i)
+        .append("\",\"explicit\":false}");
+    }
+
+    return ret.append("]").toString();
+  }
+
+  Row stored(UUID id) {
+    return session().execute(
+      "SELECT * FROM " + keyspace() + ".documents WHERE id = " + id).one();
+  }
+
+  @Test
+  public void testCompressingLargeValues() {
+    String body = json(100);
+    byte[] attachment = json(50).getBytes();
+
+    Document doc = mapper().persist(new Document(body, attachment, null));
+    Document loaded = mapper().get(Document.class, doc.id);
+
+    assertThat(loaded.body, equalTo(body));
+    assertThat(loaded.attachment, equalTo(attachment));
+    assertThat(loaded.thumbnail, nullValue());
+
+    Row row = stored(doc.id);
+
+    assertThat(row.getBytes("body").remaining(), lessThan(body.length() / 4));
+    assertThat(row.getBytes("attachment").remaining(), lessThan(attachment.length / 4));
+  }
+
+  @Test
+  public void testStoringSmallValuesAsIs() {
+    ByteBuffer thumbnail = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 });
+
+    Document doc = mapper().persist(new Document("{}", new byte[0], thumbnail));
+    Document loaded = mapper().get(Document.class, doc.id);
+
+    assertThat(loaded.body, equalTo("{}"));
+    assertThat(loaded.attachment, equalTo(new byte[0]));
+    assertThat(loaded.thumbnail, equalTo(thumbnail));
+    assertThat(stored(doc.id).getBytes("thumbnail").remaining(), equalTo(5));
+  }
+}
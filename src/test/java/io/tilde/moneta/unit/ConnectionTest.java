@@ -0,0 +1,105 @@
+package io.tilde.moneta.unit;
+
+import com.datastax.driver.core.Configuration;
+import com.datastax.driver.core.HostDistance;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.ProtocolOptions;
+import com.datastax.driver.core.policies.RoundRobinPolicy;
+import io.tilde.moneta.ConnectionProfile;
+import io.tilde.moneta.MonetaConfig;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import io.tilde.moneta.support.Cassandra;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ConnectionTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  MonetaConfig connecting() {
+    return MonetaMapper.configure()
+      .withContactPoints("127.0.0.1")
+      .withPort(Cassandra.cluster().getConfiguration().getProtocolOptions().getPort())
+      .withKeyspace(keyspace())
+      .withJmx(false);
+  }
+
+  @Test
+  public void testConnectingWithCompressedFrames() {
+    MonetaMapper mapper = connecting().withProfile(ConnectionProfile.THROUGHPUT).connect();
+
+    try {
+      Configuration conf = mapper.getSession().getCluster().getConfiguration();
+
+      assertThat(conf.getProtocolOptions().getCompression(),
+        equalTo(ProtocolOptions.Compression.SNAPPY));
+
+      Song song = mapper.persist(new Song("Zomg"));
+
+      assertThat(mapper.get(Song.class, song.id).name, equalTo("Zomg"));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().getCluster().shutdown();
+    }
+  }
+
+  @Test
+  public void testOverridingTheProfile() {
+    MonetaMapper mapper = connecting()
+      .withProfile(ConnectionProfile.LATENCY)
+      .withConnectionsPerHost(1, 2)
+      .connect();
+
+    try {
+      Configuration conf = mapper.getSession().getCluster().getConfiguration();
+      PoolingOptions pooling = conf.getPoolingOptions();
+
+      assertThat(pooling.getCoreConnectionsPerHost(HostDistance.LOCAL), equalTo(1));
+      assertThat(pooling.getMaxConnectionsPerHost(HostDistance.LOCAL), equalTo(2));
+      assertThat(pooling.getMaxSimultaneousRequestsPerConnectionThreshold(HostDistance.LOCAL),
+        equalTo(32));
+      assertThat(conf.getPolicies().getLoadBalancingPolicy(), instanceOf(RoundRobinPolicy.class));
+      assertThat(conf.getProtocolOptions().getCompression(),
+        equalTo(ProtocolOptions.Compression.NONE));
+
+      Song song = mapper.persist(new Song("Zomg"));
+
+      assertThat(mapper.get(Song.class, song.id).name, equalTo("Zomg"));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().getCluster().shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectingMoreCoreThanMaxConnections() {
+    MonetaMapper.configure().withConnectionsPerHost(4, 2);
+  }
+}
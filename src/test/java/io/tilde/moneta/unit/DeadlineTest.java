@@ -0,0 +1,95 @@
+package io.tilde.moneta.unit;
+
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.OperationInterruptedException;
+import io.tilde.moneta.OperationTimeoutException;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DeadlineTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  @Table("missing")
+  static class Missing {
+
+    @PrimaryKey
+    UUID id;
+
+    Missing() {
+      this.id = UUID.randomUUID();
+    }
+  }
+
+  @Test
+  public void testGettingWithinATimeout() {
+    Song song = mapper().persist(new Song("Zomg"), 1, TimeUnit.SECONDS);
+
+    assertThat(mapper().get(Song.class, song.id, 1, TimeUnit.SECONDS).name, equalTo("Zomg"));
+  }
+
+  @Test(expected = InvalidQueryException.class)
+  public void testPersistFailuresAreThrown() {
+    mapper().persist(new Missing());
+  }
+
+  @Test
+  public void testInterruptedWaitsKeepTheInterrupt() {
+    Thread.currentThread().interrupt();
+
+    try {
+      mapper().get(Song.class, UUID.randomUUID());
+      throw new AssertionError("expected an interrupt");
+    }
+    catch (OperationInterruptedException e) {
+      assertThat(Thread.interrupted(), equalTo(true));
+    }
+  }
+
+  @Test(expected = OperationTimeoutException.class)
+  public void testOperationsFailAfterTheDeadline() {
+    MonetaMapper mapper = configure().withDeadline(1, TimeUnit.MILLISECONDS).connect();
+
+    try {
+      List<UUID> keys = new ArrayList<>();
+
+      for (int i = 0; i < 5000; ++i) {
+        keys.add(UUID.randomUUID());
+      }
+
+      mapper.getAll(Song.class, keys);
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+}
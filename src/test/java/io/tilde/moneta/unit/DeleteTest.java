@@ -0,0 +1,210 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.CompositeKey;
+import io.tilde.moneta.KeyRange;
+import io.tilde.moneta.MapperScope;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.CachedPartitions;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Index;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class DeleteTest extends TestCase {
+
+  @Table("playlists")
+  @Cached
+  @CachedPartitions
+  static class Track {
+
+    @PrimaryKey
+    UUID id;
+
+    @PrimaryKey
+    String title;
+
+    @PrimaryKey
+    String album;
+
+    Track(UUID id, String title, String album) {
+      this.id = id;
+      this.title = title;
+      this.album = album;
+    }
+
+    public Track() {
+    }
+  }
+
+  @Table("users")
+  static class User {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    @Index
+    String email;
+
+    User(String email) {
+      this.id = UUID.randomUUID();
+      this.email = email;
+    }
+
+    public User() {
+    }
+  }
+
+  static List<String> albumsOf(List<Track> tracks) {
+    List<String> ret = new ArrayList<>();
+
+    for (Track track : tracks) {
+      ret.add(track.album);
+    }
+
+    return ret;
+  }
+
+  UUID persistTracks(String title, String... albums) {
+    UUID id = UUID.randomUUID();
+
+    for (String album : albums) {
+      mapper().persist(new Track(id, title, album));
+    }
+
+    return id;
+  }
+
+  int rowsOf(UUID id) {
+    return session().execute(
+      "SELECT * FROM " + keyspace() + ".playlists WHERE id = " + id).all().size();
+  }
+
+  @Test
+  public void testDeletingPartitionsAndPrefixes() {
+    UUID id = persistTracks("Mix", "a", "b");
+    UUID other = persistTracks("Mix", "a");
+
+    mapper().persist(new Track(id, "Other", "a"));
+
+    // Cache the entity and the partition
+    assertThat(mapper().get(Track.class, id, "Other", "a"), notNullValue());
+    assertThat(mapper().getPartition(Track.class, id).size(), equalTo(3));
+
+    mapper().deletePartition(Track.class, id, "Mix");
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id)), equalTo(Arrays.asList("a")));
+
+    mapper().deletePartition(Track.class, id);
+
+    assertThat(rowsOf(id), equalTo(0));
+    assertThat(rowsOf(other), equalTo(1));
+    assertThat(mapper().get(Track.class, id, "Other", "a"), nullValue());
+    assertThat(mapper().getPartition(Track.class, id).size(), equalTo(0));
+  }
+
+  @Test
+  public void testDeletingBoundedRanges() {
+    UUID id = persistTracks("Mix", "a", "b", "c", "d");
+
+    assertThat(mapper().get(Track.class, id, "Mix", "b"), notNullValue());
+
+    mapper().deleteRange(Track.class, KeyRange.of(id, "Mix").after("a").to("c"));
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id)), equalTo(Arrays.asList("a", "d")));
+    assertThat(mapper().get(Track.class, id, "Mix", "b"), nullValue());
+
+    mapper().deleteRange(Track.class, KeyRange.of(id, "Mix").withLimit(1));
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id)), equalTo(Arrays.asList("d")));
+  }
+
+  @Test
+  public void testDeletingBoundedRangesLargerThanABatch() {
+    UUID id = UUID.randomUUID();
+
+    for (int i = 0; i < 250; ++i) {
+      mapper().persist(new Track(id, "Mix", String.format("b%03d", i)));
+    }
+
+    mapper().persist(new Track(id, "Mix", "a"));
+    mapper().persist(new Track(id, "Mix", "c"));
+
+    mapper().deleteRange(Track.class, KeyRange.of(id, "Mix").after("a").before("c"));
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id)), equalTo(Arrays.asList("a", "c")));
+  }
+
+  @Test
+  public void testDeletingManyKeys() {
+    UUID id = persistTracks("Mix", "a", "b", "c");
+    UUID other = persistTracks("Mix", "a");
+
+    assertThat(mapper().get(Track.class, id, "Mix", "a"), notNullValue());
+
+    mapper().deleteAll(Track.class, Arrays.asList(
+      CompositeKey.of(id, "Mix", "a"),
+      CompositeKey.of(other, "Mix", "a"),
+      CompositeKey.of(id, "Mix", "c")));
+
+    assertThat(mapper().get(Track.class, id, "Mix", "a"), nullValue());
+    assertThat(rowsOf(id), equalTo(1));
+    assertThat(rowsOf(other), equalTo(0));
+  }
+
+  @Test
+  public void testDeletingMoreKeysThanABatchHolds() {
+    UUID id = UUID.randomUUID();
+    List<CompositeKey> keys = new ArrayList<>();
+
+    for (int i = 0; i < 250; ++i) {
+      mapper().persist(new Track(id, "Mix", "album-" + i));
+      keys.add(CompositeKey.of(id, "Mix", "album-" + i));
+    }
+
+    mapper().persist(new Track(id, "Mix", "kept"));
+    mapper().deleteAll(Track.class, keys);
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id)), equalTo(Arrays.asList("kept")));
+  }
+
+  @Test
+  public void testDeletingPartitionsInAScope() {
+    UUID id = persistTracks("Mix", "a", "b");
+    UUID other = persistTracks("Mix", "a");
+
+    try (MapperScope scope = mapper().openScope()) {
+      assertThat(scope.get(Track.class, CompositeKey.of(id, "Mix", "a")), notNullValue());
+      assertThat(scope.get(Track.class, CompositeKey.of(other, "Mix", "a")), notNullValue());
+
+      mapper().deletePartition(Track.class, id);
+
+      assertThat(scope.get(Track.class, CompositeKey.of(id, "Mix", "a")), nullValue());
+      assertThat(scope.get(Track.class, CompositeKey.of(other, "Mix", "a")), notNullValue());
+    }
+  }
+
+  @Test
+  public void testDeletingLookupRowsOfIndexedPartitions() {
+    User user = mapper().persist(new User("carl@example.com"));
+
+    mapper().deletePartition(User.class, user.id);
+
+    assertThat(mapper().get(User.class, user.id), nullValue());
+    assertThat(
+      session().execute("SELECT * FROM " + keyspace() + ".users_by_email").all().size(),
+      equalTo(0));
+  }
+}
@@ -0,0 +1,109 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.HedgeStats;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.OperationOptions;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class HedgingTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  MonetaMapper hedgingMapper(OperationOptions options) {
+    return configure().withOptions(Song.class, options).connect();
+  }
+
+  @Test
+  public void testHedgedReadsReturnTheEntity() {
+    MonetaMapper mapper = hedgingMapper(new OperationOptions()
+      .withHedgedReads(1, TimeUnit.MILLISECONDS));
+
+    Song song = mapper.persist(new Song("Zomg"));
+
+    for (int i = 0; i < 50; ++i) {
+      assertThat(mapper.get(Song.class, song.id).name, equalTo("Zomg"));
+    }
+
+    HedgeStats stats = mapper.getHedgeStats(Song.class);
+
+    assertThat(stats.getReads(), equalTo(50L));
+    assertThat(stats.getHedged(), lessThanOrEqualTo(50L));
+    assertThat(stats.getWon(), lessThanOrEqualTo(stats.getHedged()));
+  }
+
+  @Test
+  public void testReadsAreNotHedgedBeforeTheDelay() {
+    MonetaMapper mapper = hedgingMapper(new OperationOptions()
+      .withHedgedReads(10, TimeUnit.SECONDS)
+      .withHedgedReadsAtPercentile(99));
+
+    Song song = mapper.persist(new Song("Zomg"));
+
+    for (int i = 0; i < 20; ++i) {
+      mapper.get(Song.class, song.id);
+    }
+
+    assertThat(mapper.getHedgeStats(Song.class).getHedged(), equalTo(0L));
+  }
+
+  @Test
+  public void testTrackingEachPercentileReadsAskFor() {
+    MonetaMapper mapper = hedgingMapper(new OperationOptions()
+      .withHedgedReads(1, TimeUnit.MILLISECONDS)
+      .withHedgedReadsAtPercentile(50));
+
+    OperationOptions low = new OperationOptions().withHedgedReadsAtPercentile(1);
+    OperationOptions high = new OperationOptions().withHedgedReadsAtPercentile(99);
+
+    Song song = mapper.persist(new Song("Zomg"));
+
+    // Records more than the 1024 latencies the percentiles are computed from
+    for (int i = 0; i < 400; ++i) {
+      mapper.get(Song.class, song.id);
+      mapper.get(Song.class, song.id, low);
+      mapper.get(Song.class, song.id, high);
+    }
+
+    long median = hedgeThreshold(mapper, Song.class, 50);
+
+    assertThat(hedgeThreshold(mapper, Song.class, 1), greaterThanOrEqualTo(0L));
+    assertThat(hedgeThreshold(mapper, Song.class, 1), lessThanOrEqualTo(median));
+    assertThat(hedgeThreshold(mapper, Song.class, 99), greaterThanOrEqualTo(median));
+  }
+
+  @Test
+  public void testReadsAreNotHedgedByDefault() {
+    Song song = mapper().persist(new Song("Zomg"));
+    mapper().get(Song.class, song.id);
+
+    assertThat(mapper().getHedgeStats(Song.class).getReads(), equalTo(0L));
+  }
+}
@@ -0,0 +1,115 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Index;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class IndexTest extends TestCase {
+
+  @Table("users")
+  @Cached
+  static class User {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    @Index
+    String email;
+
+    @Column
+    String name;
+
+    User(String email, String name) {
+      this.id = UUID.randomUUID();
+      this.email = email;
+      this.name = name;
+    }
+
+    public User() {
+    }
+  }
+
+  int lookupRows() {
+    return session().execute("SELECT * FROM " + keyspace() + ".users_by_email").all().size();
+  }
+
+  @Test
+  public void testGettingByIndexedColumn() {
+    User user = new User("carl@example.com", "Carl");
+    mapper().persist(user);
+
+    assertThat(mapper().getBy(User.class, "email", "carl@example.com").id, equalTo(user.id));
+    assertThat(mapper().getBy(User.class, "email", "nobody@example.com"), nullValue());
+  }
+
+  @Test
+  public void testChangingIndexedColumnRemovesOldValue() {
+    User user = new User("old@example.com", "Carl");
+    mapper().persist(user);
+
+    // Cache the entity, the previous value is still read from Cassandra
+    mapper().get(User.class, user.id);
+
+    user.email = "new@example.com";
+    mapper().persist(user);
+
+    user.email = "newer@example.com";
+    mapper().persist(user);
+
+    assertThat(mapper().getBy(User.class, "email", "old@example.com"), nullValue());
+    assertThat(mapper().getBy(User.class, "email", "new@example.com"), nullValue());
+    assertThat(mapper().getBy(User.class, "email", "newer@example.com").email,
+      equalTo("newer@example.com"));
+    assertThat(lookupRows(), equalTo(1));
+  }
+
+  @Test
+  public void testChangingTheCachedInstanceRemovesOldValue() {
+    mapper().persist(new User("old@example.com", "Carl"));
+
+    User user = mapper().getBy(User.class, "email", "old@example.com");
+
+    // The instance the cache holds, the write must not take its value as
+    // the stored one
+    user = mapper().get(User.class, user.id);
+    user.email = "new@example.com";
+    mapper().persist(user);
+
+    assertThat(mapper().getBy(User.class, "email", "old@example.com"), nullValue());
+    assertThat(mapper().getBy(User.class, "email", "new@example.com").id, equalTo(user.id));
+    assertThat(lookupRows(), equalTo(1));
+  }
+
+  @Test
+  public void testDeletingAMutatedInstanceRemovesStoredValue() {
+    User user = mapper().persist(new User("carl@example.com", "Carl"));
+
+    mapper().get(User.class, user.id).email = "changed@example.com";
+    mapper().delete(User.class, user.id);
+
+    assertThat(mapper().getBy(User.class, "email", "carl@example.com"), nullValue());
+    assertThat(lookupRows(), equalTo(0));
+  }
+
+  @Test
+  public void testDeletingRemovesLookupRows() {
+    User user = new User("carl@example.com", "Carl");
+    mapper().persist(user);
+    mapper().delete(User.class, user.id);
+
+    assertThat(mapper().get(User.class, user.id), nullValue());
+    assertThat(mapper().getBy(User.class, "email", "carl@example.com"), nullValue());
+    assertThat(lookupRows(), equalTo(0));
+  }
+}
@@ -0,0 +1,124 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.MonetaConfig;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class JmxTest extends TestCase {
+
+  @Table("songs")
+  @Cached(maximumSize = 100)
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+  @Override
+  public MonetaConfig configure() {
+    return super.configure().withJmx(true);
+  }
+
+  Set<ObjectName> mappingsOf(Class<?> klass) throws Exception {
+    return server.queryNames(new ObjectName(
+      "io.tilde.moneta:type=Mapping,entity=" + klass.getName() + ",*"), null);
+  }
+
+  ObjectName mappingOf(Class<?> klass) throws Exception {
+    Set<ObjectName> names = mappingsOf(klass);
+    assertThat(names.size(), equalTo(1));
+    return names.iterator().next();
+  }
+
+  @Test
+  public void testExposingMappingAndCacheStats() throws Exception {
+    Song song = mapper().persist(new Song("Hey Jude"));
+
+    mapper().get(Song.class, song.id);
+    mapper().get(Song.class, song.id);
+
+    ObjectName name = mappingOf(Song.class);
+
+    assertThat((String) server.getAttribute(name, "Table"), equalTo("songs"));
+    assertThat((String[]) server.getAttribute(name, "PrimaryKey"), equalTo(new String[] { "id" }));
+    assertThat((Long) server.getAttribute(name, "CacheSize"), equalTo(1L));
+    assertThat((Long) server.getAttribute(name, "CacheMaximumSize"), equalTo(100L));
+    assertThat((Double) server.getAttribute(name, "CacheHitRate"), equalTo(0.5));
+    assertThat((Integer) server.getAttribute(name, "InFlightReads"), equalTo(0));
+  }
+
+  @Test
+  public void testInvalidatingAndResizingTheCache() throws Exception {
+    Song song = mapper().persist(new Song("Let It Be"));
+    mapper().get(Song.class, song.id);
+
+    ObjectName name = mappingOf(Song.class);
+
+    server.invoke(name, "invalidate",
+      new Object[] { song.id.toString() }, new String[] { String.class.getName() });
+
+    assertThat((Long) server.getAttribute(name, "CacheSize"), equalTo(0L));
+
+    mapper().get(Song.class, song.id);
+
+    server.invoke(name, "resizeCache",
+      new Object[] { 10L }, new String[] { long.class.getName() });
+
+    assertThat((Long) server.getAttribute(name, "CacheMaximumSize"), equalTo(10L));
+    assertThat((Long) server.getAttribute(name, "CacheSize"), equalTo(0L));
+
+    for (int i = 0; i < 20; ++i) {
+      mapper().get(Song.class, mapper().persist(new Song("Song " + i)).id);
+    }
+
+    assertThat((Long) server.getAttribute(name, "CacheSize") <= 10, equalTo(true));
+  }
+
+  @Test
+  public void testUnregisteringOnClose() throws Exception {
+    MonetaMapper mapper = configure().connect();
+    MonetaMapper disabled = configure().withJmx(false).connect();
+
+    try {
+      mapper.get(Song.class, UUID.randomUUID());
+      disabled.get(Song.class, UUID.randomUUID());
+
+      assertThat(mappingsOf(Song.class).size(), equalTo(1));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+      disabled.close();
+      disabled.getSession().shutdown();
+    }
+
+    assertThat(mappingsOf(Song.class).size(), equalTo(0));
+  }
+}
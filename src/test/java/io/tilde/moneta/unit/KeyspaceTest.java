@@ -0,0 +1,176 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Cached;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Index;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class KeyspaceTest extends TestCase {
+
+  @Table("songs")
+  @Cached
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  @Table("users")
+  static class User {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    @Index
+    String email;
+
+    User(String email) {
+      this.id = UUID.randomUUID();
+      this.email = email;
+    }
+
+    public User() {
+    }
+  }
+
+  @Override
+  public String keyspace() {
+    return "moneta_tenant_a";
+  }
+
+  String other() {
+    return "moneta_tenant_b";
+  }
+
+  @Override
+  public void createSchema() {
+    super.createSchema();
+
+    createKeyspace(other());
+    createTable("songs", other(), "id uuid PRIMARY KEY, name text");
+    createTable("users", other(), "id uuid PRIMARY KEY, email text, name text");
+    createTable("users_by_email", other(), "email text, id uuid, PRIMARY KEY (email, id)");
+  }
+
+  @Test
+  public void testReadingAndWritingOtherKeyspaces() {
+    MonetaMapper tenant = mapper().forKeyspace(other());
+
+    assertThat(tenant.getKeyspace(), equalTo(other()));
+    assertThat(mapper().forKeyspace(other()), sameInstance(tenant));
+    assertThat(tenant.forKeyspace(keyspace()), sameInstance(mapper()));
+
+    Song song = tenant.persist(new Song("Zomg"));
+
+    assertThat(tenant.get(Song.class, song.id).name, equalTo("Zomg"));
+    assertThat(mapper().get(Song.class, song.id), nullValue());
+    assertThat(
+      session().execute("SELECT * FROM " + other() + ".songs").all().size(),
+      equalTo(1));
+  }
+
+  @Test
+  public void testCachingEachKeyspaceSeparately() {
+    MonetaMapper tenant = mapper().forKeyspace(other());
+
+    Song song = mapper().persist(new Song("Zomg"));
+    tenant.persist(new Song("Hello"));
+
+    assertThat(mapper().get(Song.class, song.id), notNullValue());
+    assertThat(tenant.get(Song.class, song.id), nullValue());
+
+    tenant.invalidate(Song.class, song.id);
+
+    assertThat(mapper().get(Song.class, song.id).name, equalTo("Zomg"));
+  }
+
+  @Test
+  public void testWritingIndexesToTheirKeyspace() {
+    MonetaMapper tenant = mapper().forKeyspace(other());
+
+    User user = tenant.persist(new User("carl@example.com"));
+
+    assertThat(tenant.getBy(User.class, "email", "carl@example.com").id, equalTo(user.id));
+    assertThat(mapper().getBy(User.class, "email", "carl@example.com"), nullValue());
+  }
+
+  @Test
+  public void testBoundingTheCachesOfViews() {
+    MonetaMapper mapper = configure().withViewCacheBudget(4096).connect();
+
+    try {
+      MonetaMapper tenant = mapper.forKeyspace(other());
+
+      for (int i = 0; i < 100; ++i) {
+        Song song = tenant.persist(new Song("Song " + i));
+        tenant.get(Song.class, song.id);
+      }
+
+      assertThat(tenant.getCachedBytes(), greaterThan(0L));
+      assertThat(tenant.getCachedBytes(), lessThanOrEqualTo(4096L));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+
+  @Test
+  public void testClosingAView() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName names = new ObjectName(
+      "io.tilde.moneta:type=Mapping,keyspace=" + other() + ",*");
+
+    MonetaMapper mapper = configure().withJmx(true).connect();
+
+    try {
+      MonetaMapper tenant = mapper.forKeyspace(other());
+      Song song = tenant.persist(new Song("Zomg"));
+
+      assertThat(tenant.get(Song.class, song.id).name, equalTo("Zomg"));
+      assertThat(tenant.getCachedBytes(), greaterThan(0L));
+      assertThat(server.queryNames(names, null).size(), equalTo(1));
+
+      tenant.close();
+
+      assertThat(tenant.getCachedBytes(), equalTo(0L));
+      assertThat(server.queryNames(names, null).size(), equalTo(0));
+      assertThat(mapper.forKeyspace(other()), not(sameInstance(tenant)));
+      assertThat(mapper.forKeyspace(other()).get(Song.class, song.id).name, equalTo("Zomg"));
+    }
+    finally {
+      mapper.close();
+      mapper.getSession().shutdown();
+    }
+  }
+}
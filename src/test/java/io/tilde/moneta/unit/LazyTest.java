@@ -0,0 +1,92 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.LazyColumn;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.Compressed;
+import io.tilde.moneta.annotations.Lazy;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class LazyTest extends TestCase {
+
+  @Table("documents")
+  static class Document {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    @Lazy
+    @Compressed
+    LazyColumn<String> body;
+
+    @Column
+    @Lazy
+    @Compressed(Compressed.Codec.SNAPPY)
+    LazyColumn<byte[]> attachment;
+
+    Document(String body) {
+      this.id = UUID.randomUUID();
+      this.body = LazyColumn.of(body);
+    }
+
+    public Document() {
+    }
+  }
+
+  @Test
+  public void testLazyColumnsAreReadOnFirstAccess() throws Exception {
+    Document doc = mapper().persist(new Document("Hello world"));
+
+    Document loaded = mapper().get(Document.class, doc.id);
+
+    assertThat(loaded.body.isLoaded(), equalTo(false));
+    assertThat(loaded.body.get(), equalTo("Hello world"));
+    assertThat(loaded.body.isLoaded(), equalTo(true));
+    assertThat(loaded.attachment.get(), equalTo(null));
+  }
+
+  @Test
+  public void testLazyColumnsOfGetAllAreReadTogether() throws Exception {
+    List<UUID> ids = new ArrayList<>();
+
+    for (int i = 0; i < 5; ++i) {
+      ids.add(mapper().persist(new Document("Document " + i)).id);
+    }
+
+    Collection<Document> docs = mapper().getAll(Document.class, ids);
+
+    assertThat(docs.size(), equalTo(5));
+    assertThat(docs.iterator().next().body.get(), equalTo("Document 0"));
+
+    for (Document doc : docs) {
+      assertThat(doc.body.isLoaded(), equalTo(true));
+      assertThat(doc.body.get(), equalTo("Document " + ids.indexOf(doc.id)));
+      assertThat(doc.attachment.isLoaded(), equalTo(false));
+    }
+  }
+
+  @Test
+  public void testPersistingLeavesLazyColumnsThatWereNotRead() throws Exception {
+    Document doc = mapper().persist(new Document("Hello world"));
+
+    Document loaded = mapper().get(Document.class, doc.id);
+    loaded.attachment.set(new byte[] { 1, 2, 3 });
+    mapper().persist(loaded);
+
+    Document reloaded = mapper().get(Document.class, doc.id);
+
+    assertThat(reloaded.body.get(), equalTo("Hello world"));
+    assertThat(reloaded.attachment.get(), equalTo(new byte[] { 1, 2, 3 }));
+  }
+}
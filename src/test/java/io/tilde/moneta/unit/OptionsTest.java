@@ -0,0 +1,92 @@
+package io.tilde.moneta.unit;
+
+import com.datastax.driver.core.ConsistencyLevel;
+import com.datastax.driver.core.exceptions.InvalidQueryException;
+import io.tilde.moneta.KeyRange;
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.OperationOptions;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * EACH_QUORUM is rejected by the server for reads, which shows which
+ * consistency level a read was sent with.
+ */
+public class OptionsTest extends TestCase {
+
+  @Table(value = "songs", readConsistency = "EACH_QUORUM", writeConsistency = "ALL")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  static final OperationOptions READ_ONE =
+    new OperationOptions().withReadConsistency(ConsistencyLevel.ONE);
+
+  @Test(expected = InvalidQueryException.class)
+  public void testReadingWithTheConsistencyOfTheTable() {
+    mapper().get(Song.class, UUID.randomUUID());
+  }
+
+  @Test
+  public void testOverridingConsistencyPerCall() {
+    Song song = mapper().persist(new Song("Zomg"));
+
+    assertThat(mapper().get(Song.class, song.id, READ_ONE).name, equalTo("Zomg"));
+  }
+
+  @Test
+  public void testOverridingConsistencyOfMultiGetsAndRangesPerCall() {
+    Song song = mapper().persist(new Song("Zomg"));
+
+    assertThat(mapper().getAll(Song.class, Arrays.asList(song.id), READ_ONE).size(), equalTo(1));
+    assertThat(mapper().getRange(Song.class, KeyRange.of(song.id), READ_ONE).size(), equalTo(1));
+  }
+
+  @Test(expected = InvalidQueryException.class)
+  public void testReadingRangesWithTheConsistencyOfTheTable() {
+    mapper().getRange(Song.class, KeyRange.of(UUID.randomUUID()));
+  }
+
+  @Test
+  public void testOverridingConsistencyPerClass() {
+    MonetaMapper mapper = configure()
+      .withDefaultOptions(new OperationOptions().withReadConsistency(ConsistencyLevel.ALL))
+      .withOptions(Song.class, READ_ONE)
+      .connect();
+
+    Song song = mapper.persist(new Song("Zomg"));
+
+    assertThat(mapper.get(Song.class, song.id).name, equalTo("Zomg"));
+  }
+
+  @Test(expected = InvalidQueryException.class)
+  public void testOverridingTheDefaultsWithTheTable() {
+    MonetaMapper mapper = configure()
+      .withDefaultOptions(READ_ONE)
+      .connect();
+
+    mapper.get(Song.class, UUID.randomUUID());
+  }
+}
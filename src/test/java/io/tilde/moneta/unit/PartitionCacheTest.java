@@ -0,0 +1,109 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.CompositeKey;
+import io.tilde.moneta.KeyRange;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.CachedPartitions;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PartitionCacheTest extends TestCase {
+
+  @Table("playlists")
+  @CachedPartitions
+  static class Track {
+
+    @PrimaryKey
+    UUID id;
+
+    @PrimaryKey
+    String title;
+
+    @PrimaryKey
+    String album;
+
+    Track(UUID id, String title, String album) {
+      this.id = id;
+      this.title = title;
+      this.album = album;
+    }
+
+    public Track() {
+    }
+  }
+
+  static List<String> albumsOf(List<Track> tracks) {
+    List<String> ret = new ArrayList<>();
+
+    for (Track track : tracks) {
+      ret.add(track.album);
+    }
+
+    return ret;
+  }
+
+  void insertDirectly(UUID id, String title, String album) {
+    session().execute("INSERT INTO " + keyspace() + ".playlists (id, title, album) " +
+      "VALUES (" + id + ", '" + title + "', '" + album + "')");
+  }
+
+  @Test
+  public void testReadingPartitionsAndRanges() {
+    UUID id = UUID.randomUUID();
+
+    for (String album : Arrays.asList("c", "a", "d", "b")) {
+      mapper().persist(new Track(id, "Mix", album));
+    }
+
+    mapper().persist(new Track(id, "Other", "a"));
+    mapper().persist(new Track(UUID.randomUUID(), "Mix", "a"));
+
+    assertThat(mapper().getPartition(Track.class, id).size(), equalTo(5));
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id, "Mix")),
+      equalTo(Arrays.asList("a", "b", "c", "d")));
+
+    assertThat(albumsOf(mapper().getRange(Track.class, KeyRange.of(id, "Mix").after("a").to("c"))),
+      equalTo(Arrays.asList("b", "c")));
+
+    assertThat(albumsOf(mapper().getRange(Track.class, KeyRange.of(id, "Mix").from("b").withLimit(1))),
+      equalTo(Arrays.asList("b")));
+  }
+
+  @Test
+  public void testInvalidatingThePartitionOnWrites() {
+    UUID id = UUID.randomUUID();
+    UUID other = UUID.randomUUID();
+
+    mapper().persist(new Track(id, "Mix", "a"));
+    mapper().persist(new Track(other, "Mix", "a"));
+
+    assertThat(mapper().getPartition(Track.class, id).size(), equalTo(1));
+    assertThat(mapper().getPartition(Track.class, other).size(), equalTo(1));
+
+    // Writes that bypass the mapper are not seen until the result expires
+    insertDirectly(id, "Mix", "b");
+    insertDirectly(other, "Mix", "b");
+
+    assertThat(mapper().getPartition(Track.class, id).size(), equalTo(1));
+
+    mapper().persist(new Track(id, "Mix", "c"));
+
+    assertThat(mapper().getPartition(Track.class, id).size(), equalTo(3));
+    assertThat(mapper().getPartition(Track.class, other).size(), equalTo(1));
+
+    mapper().delete(Track.class, CompositeKey.of(id, "Mix", "a"));
+
+    assertThat(albumsOf(mapper().getPartition(Track.class, id)),
+      equalTo(Arrays.asList("b", "c")));
+  }
+}
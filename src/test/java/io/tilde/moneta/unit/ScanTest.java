@@ -0,0 +1,170 @@
+package io.tilde.moneta.unit;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.tilde.moneta.ScanException;
+import io.tilde.moneta.ScanProgress;
+import io.tilde.moneta.ScanSink;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ScanTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(UUID id, String name) {
+      this.id = id;
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  @Table("playlists")
+  static class Playlist {
+
+    @PrimaryKey
+    UUID id;
+
+    @PrimaryKey
+    String title;
+
+    @PrimaryKey
+    String album;
+
+    Playlist(UUID id, String title, String album) {
+      this.id = id;
+      this.title = title;
+      this.album = album;
+    }
+
+    public Playlist() {
+    }
+  }
+
+  static class Collect<T> extends ScanSink<T> {
+
+    final Set<T> entities =
+      Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+
+    final AtomicInteger ranges = new AtomicInteger();
+
+    public void onEntity(T entity) {
+      entities.add(entity);
+    }
+
+    public void onRangeComplete(ScanProgress.Range range) {
+      ranges.incrementAndGet();
+    }
+  }
+
+  Set<UUID> persistSongs(int count) throws Exception {
+    Set<UUID> ids = new HashSet<>();
+    List<ListenableFuture<Song>> persists = new ArrayList<>();
+
+    for (int i = 0; i < count; ++i) {
+      Song song = new Song(UUID.randomUUID(), "Song " + i);
+      ids.add(song.id);
+      persists.add(mapper().persistAsync(song));
+    }
+
+    Futures.allAsList(persists).get();
+
+    return ids;
+  }
+
+  static Set<UUID> idsOf(Set<Song> songs) {
+    Set<UUID> ret = new HashSet<>();
+
+    for (Song song : songs) {
+      ret.add(song.id);
+    }
+
+    return ret;
+  }
+
+  @Test
+  public void testScanningAllEntities() throws Exception {
+    Set<UUID> ids = persistSongs(300);
+    Collect<Song> sink = new Collect<>();
+
+    ScanProgress progress = mapper().scanAll(Song.class, 4, sink);
+
+    assertThat(idsOf(sink.entities), equalTo(ids));
+    assertThat(sink.ranges.get(), equalTo(progress.getRanges().size()));
+    assertThat(progress.isComplete(), equalTo(true));
+    assertThat(progress.getScanned(), equalTo(300L));
+  }
+
+  @Test
+  public void testScanningPartitionsLargerThanAPage() throws Exception {
+    UUID id = UUID.randomUUID();
+    List<ListenableFuture<Playlist>> persists = new ArrayList<>();
+
+    for (int i = 0; i < 1500; ++i) {
+      persists.add(mapper().persistAsync(new Playlist(id, "Title", "Album " + i)));
+    }
+
+    persists.add(mapper().persistAsync(new Playlist(UUID.randomUUID(), "Other", "Album")));
+    Futures.allAsList(persists).get();
+
+    Collect<Playlist> sink = new Collect<>();
+    mapper().scanAll(Playlist.class, 1, sink);
+
+    assertThat(sink.entities.size(), equalTo(1501));
+  }
+
+  @Test
+  public void testResumingAFailedScan() throws Exception {
+    Set<UUID> ids = persistSongs(200);
+    final AtomicInteger calls = new AtomicInteger();
+
+    Collect<Song> sink = new Collect<Song>() {
+      public void onEntity(Song entity) {
+        if (calls.incrementAndGet() == 50)
+          throw new IllegalStateException("boom");
+
+        super.onEntity(entity);
+      }
+    };
+
+    ScanProgress progress = null;
+
+    try {
+      mapper().scanAll(Song.class, 2, sink);
+    }
+    catch (ScanException e) {
+      progress = e.getProgress();
+    }
+
+    assertThat(progress.isComplete(), equalTo(false));
+
+    mapper().resumeScan(Song.class, progress, sink);
+
+    assertThat(progress.isComplete(), equalTo(true));
+    assertThat(idsOf(sink.entities), equalTo(ids));
+  }
+}
@@ -0,0 +1,110 @@
+package io.tilde.moneta.unit;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.tilde.moneta.MapperScope;
+import io.tilde.moneta.OperationInterruptedException;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.junit.Test;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ScopeTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  @Test
+  public void testGetsInAScopeReturnTheSameInstance() throws Exception {
+    Song song = mapper().persist(new Song("Scoped"));
+    Song first;
+
+    try (MapperScope scope = mapper().openScope()) {
+      first = mapper().get(Song.class, song.id);
+
+      assertThat(mapper().get(Song.class, song.id), sameInstance(first));
+      assertThat(scope.get(Song.class, song.id), sameInstance(first));
+    }
+
+    assertThat(mapper().get(Song.class, song.id), not(sameInstance(first)));
+  }
+
+  @Test
+  public void testConcurrentGetsShareOneLoad() throws Exception {
+    Song song = mapper().persist(new Song("Scoped"));
+
+    try (MapperScope scope = mapper().openScope()) {
+      ListenableFuture<Song> a = mapper().getAsync(Song.class, song.id);
+      ListenableFuture<Song> b = scope.getAsync(Song.class, song.id);
+
+      assertThat(b, sameInstance(a));
+      assertThat(a.get().name, equalTo("Scoped"));
+    }
+  }
+
+  @Test
+  public void testGivingUpOnAGetLeavesTheLoadToOthers() throws Exception {
+    Song song = mapper().persist(new Song("Scoped"));
+
+    try (MapperScope scope = mapper().openScope()) {
+      ListenableFuture<Song> shared = scope.getAsync(Song.class, song.id);
+
+      Thread.currentThread().interrupt();
+
+      try {
+        mapper().get(Song.class, song.id, 1, TimeUnit.SECONDS);
+        throw new AssertionError("expected an interrupt");
+      }
+      catch (OperationInterruptedException e) {
+        assertThat(Thread.interrupted(), equalTo(true));
+      }
+
+      assertThat(shared.isCancelled(), equalTo(false));
+      assertThat(shared.get().name, equalTo("Scoped"));
+      assertThat(scope.get(Song.class, song.id), sameInstance(shared.get()));
+    }
+  }
+
+  @Test
+  public void testWritesInAScopeUpdateIt() throws Exception {
+    Song song = mapper().persist(new Song("Scoped"));
+
+    try (MapperScope scope = mapper().openScope()) {
+      Song updated = new Song("Updated");
+      updated.id = song.id;
+      mapper().persist(updated);
+
+      assertThat(mapper().get(Song.class, song.id), sameInstance(updated));
+      assertThat(scope.getAsync(Song.class, song.id).get(), sameInstance(updated));
+
+      mapper().delete(Song.class, song.id);
+
+      assertThat(mapper().get(Song.class, song.id), nullValue());
+      assertThat(scope.getAsync(Song.class, song.id).get(), nullValue());
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.MonetaMapper;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class SlowQueryLogTest extends TestCase {
+
+  @Table("songs")
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  static class Capture extends AppenderSkeleton {
+
+    final List<String> messages = new CopyOnWriteArrayList<>();
+
+    protected void append(LoggingEvent event) {
+      messages.add(event.getRenderedMessage());
+    }
+
+    public void close() {
+    }
+
+    public boolean requiresLayout() {
+      return false;
+    }
+
+    String await(String contains) throws InterruptedException {
+      long deadline = System.currentTimeMillis() + 10000;
+
+      while (System.currentTimeMillis() < deadline) {
+        for (String message : messages) {
+          if (message.contains(contains))
+            return message;
+        }
+
+        Thread.sleep(20);
+      }
+
+      throw new AssertionError("no log message containing " + contains + "; got=" + messages);
+    }
+  }
+
+  Capture capture = new Capture();
+
+  Logger logger = Logger.getLogger("io.tilde.moneta.SlowQueryLog");
+
+  @Before
+  public void captureLog() {
+    logger.addAppender(capture);
+  }
+
+  @After
+  public void releaseLog() {
+    logger.removeAppender(capture);
+  }
+
+  @Test
+  public void testLoggingSlowOperations() throws Exception {
+    MonetaMapper mapper = configure()
+      .withSlowQueryLog(0, TimeUnit.MILLISECONDS)
+      .connect();
+
+    Song song = mapper.persist(new Song("Zomg"));
+    mapper.get(Song.class, song.id);
+
+    String message = capture.await("SELECT");
+
+    assertThat(message, containsString("slow operation; class=" + Song.class.getName()));
+    assertThat(message, containsString("key=" + song.id));
+    assertThat(message, containsString("coordinator=/127.0.0.1"));
+  }
+
+  @Test
+  public void testTracingSampledOperations() throws Exception {
+    MonetaMapper mapper = configure()
+      .withTracingSample(1.0)
+      .connect();
+
+    Song song = mapper.persist(new Song("Zomg"));
+    mapper.get(Song.class, song.id);
+
+    String message = capture.await("SELECT");
+
+    assertThat(message, containsString("sampled operation"));
+    assertThat(message.contains("traceId=null"), equalTo(false));
+    assertThat(message, containsString("us /127.0.0.1"));
+  }
+
+  @Test
+  public void testFastOperationsAreNotLogged() {
+    MonetaMapper mapper = configure()
+      .withSlowQueryLog(1, TimeUnit.MINUTES)
+      .connect();
+
+    Song song = mapper.persist(new Song("Zomg"));
+    mapper.get(Song.class, song.id);
+
+    assertThat(capture.messages.size(), equalTo(0));
+  }
+}
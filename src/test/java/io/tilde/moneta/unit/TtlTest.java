@@ -0,0 +1,90 @@
+package io.tilde.moneta.unit;
+
+import io.tilde.moneta.OperationOptions;
+import io.tilde.moneta.TestCase;
+import io.tilde.moneta.annotations.Column;
+import io.tilde.moneta.annotations.PrimaryKey;
+import io.tilde.moneta.annotations.Table;
+import io.tilde.moneta.annotations.Ttl;
+import io.tilde.moneta.annotations.WriteTime;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class TtlTest extends TestCase {
+
+  @Table(value = "songs", ttl = 3600)
+  static class Song {
+
+    @PrimaryKey
+    UUID id;
+
+    @Column
+    String name;
+
+    @Ttl("name")
+    int nameTtl;
+
+    @WriteTime("name")
+    long nameWrittenAt;
+
+    Song(String name) {
+      this.id = UUID.randomUUID();
+      this.name = name;
+    }
+
+    public Song() {
+    }
+  }
+
+  @Test
+  public void testPersistingWithTheEntityTtl() throws Exception {
+    Song song = mapper().persist(new Song("Expiring"));
+
+    Song loaded = mapper().get(Song.class, song.id);
+
+    assertThat(loaded.nameTtl, greaterThan(3500));
+    assertThat(loaded.nameTtl, lessThanOrEqualTo(3600));
+    assertThat(loaded.nameWrittenAt, greaterThan(0L));
+  }
+
+  @Test
+  public void testPersistingWithTtlAndTimestamp() throws Exception {
+    Song song = mapper().persist(new Song("New"),
+      new OperationOptions().withTtl(1, TimeUnit.MINUTES).withTimestamp(2000));
+
+    // Older writes lose against the newer timestamp
+    song.name = "Old";
+    mapper().persist(song, new OperationOptions().withTimestamp(1000));
+
+    Song loaded = mapper().get(Song.class, song.id);
+
+    assertThat(loaded.name, equalTo("New"));
+    assertThat(loaded.nameTtl, lessThanOrEqualTo(60));
+    assertThat(loaded.nameWrittenAt, equalTo(2000L));
+  }
+
+  @Test
+  public void testPersistedEntitiesExpire() throws Exception {
+    Song a = new Song("A");
+    Song b = new Song("B");
+
+    mapper().persistAll(Arrays.asList(a, b),
+      new OperationOptions().withTtl(1, TimeUnit.SECONDS));
+
+    assertThat(mapper().get(Song.class, a.id).name, equalTo("A"));
+
+    Thread.sleep(2000);
+
+    assertThat(mapper().get(Song.class, a.id), nullValue());
+    assertThat(mapper().get(Song.class, b.id), nullValue());
+  }
+}